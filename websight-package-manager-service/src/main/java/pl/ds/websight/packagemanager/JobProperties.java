@@ -3,6 +3,7 @@ package pl.ds.websight.packagemanager;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.event.jobs.Job;
 import org.apache.sling.event.jobs.ScheduledJobInfo;
+import org.osgi.service.event.Event;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -68,6 +69,10 @@ public class JobProperties {
         return getStringProp(scheduledJobInfo, JobProperties.APPLICANT_ID_PROPS_PARAM);
     }
 
+    public static String getApplicantId(Event jobNotification) {
+        return getStringProp(jobNotification, JobProperties.APPLICANT_ID_PROPS_PARAM);
+    }
+
     public static String getPackagePath(Job job) {
         return job.getProperty(JobProperties.PACKAGE_REF_PROPS_PARAM, String.class);
     }
@@ -76,6 +81,15 @@ public class JobProperties {
         return getStringProp(scheduledJobInfo, JobProperties.PACKAGE_REF_PROPS_PARAM);
     }
 
+    public static String getPackagePath(Event jobNotification) {
+        return getStringProp(jobNotification, JobProperties.PACKAGE_REF_PROPS_PARAM);
+    }
+
+    private static String getStringProp(Event jobNotification, String propName) {
+        Object value = jobNotification.getProperty(propName);
+        return value != null ? value.toString() : null;
+    }
+
     private static String getStringProp(ScheduledJobInfo scheduledJobInfo, String propName) {
         Map<String, Object> jobProperties = scheduledJobInfo.getJobProperties();
         return jobProperties.containsKey(propName) ? jobProperties.get(propName).toString() : null;
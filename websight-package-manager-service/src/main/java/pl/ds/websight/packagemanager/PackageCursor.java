@@ -0,0 +1,77 @@
+package pl.ds.websight.packagemanager;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
+import pl.ds.websight.packagemanager.rest.requestparameters.SortBy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+
+/**
+ * Opaque position in sorted packages list, pointing at the last package of a page. Packages are ordered by sort keys of
+ * requested {@link SortBy} and then by path, so next page starts directly after the package the cursor was created for.
+ */
+public final class PackageCursor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageCursor.class);
+
+    private static final char SEPARATOR = '\n';
+    private static final Comparator<String> NAME_COMPARATOR = Comparator.nullsLast(Comparator.naturalOrder());
+
+    private final SortBy sortBy;
+    private final long sortValue;
+    private final String sortName;
+    private final String path;
+
+    private PackageCursor(SortBy sortBy, long sortValue, String sortName, String path) {
+        this.sortBy = sortBy;
+        this.sortValue = sortValue;
+        this.sortName = sortName;
+        this.path = path;
+    }
+
+    public static PackageCursor of(SortBy sortBy, PackageDefinition definition) {
+        return new PackageCursor(sortBy, sortBy.getSortValue(definition), sortBy.getSortName(definition), definition.getPath());
+    }
+
+    public static PackageCursor decode(String encodedCursor) {
+        if (StringUtils.isBlank(encodedCursor)) {
+            return null;
+        }
+        try {
+            String cursor = new String(Base64.getUrlDecoder().decode(encodedCursor), StandardCharsets.UTF_8);
+            String[] parts = StringUtils.splitPreserveAllTokens(cursor, SEPARATOR);
+            if (parts.length == 4) {
+                return new PackageCursor(SortBy.valueOf(parts[0]), Long.parseLong(parts[1]), StringUtils.defaultIfEmpty(parts[2], null),
+                        parts[3]);
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Could not decode cursor: {}", encodedCursor, e);
+        }
+        return null;
+    }
+
+    public String encode() {
+        String cursor = sortBy.name() + SEPARATOR + sortValue + SEPARATOR + StringUtils.defaultString(sortName) + SEPARATOR + path;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public SortBy getSortBy() {
+        return sortBy;
+    }
+
+    /**
+     * Checks if given package is placed after this cursor in packages sorted by {@link SortBy#getComparator()}.
+     */
+    public boolean isAfter(PackageDefinition definition) {
+        int comparison = Long.compare(sortBy.getSortValue(definition), sortValue);
+        if (comparison == 0) {
+            comparison = NAME_COMPARATOR.compare(sortBy.getSortName(definition), sortName);
+        }
+        return comparison > 0 || (comparison == 0 && definition.getPath().compareTo(path) > 0);
+    }
+
+}
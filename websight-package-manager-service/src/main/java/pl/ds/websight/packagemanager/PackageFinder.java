@@ -1,18 +1,12 @@
 package pl.ds.websight.packagemanager;
 
-import org.apache.jackrabbit.vault.packaging.JcrPackage;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
 
-import javax.jcr.Node;
-import javax.jcr.RepositoryException;
 import java.util.List;
 import java.util.OptionalLong;
 
 public class PackageFinder {
 
-    private static final Logger LOG = LoggerFactory.getLogger(PackageFinder.class);
-
     public static final int PACKAGES_PER_PAGE = 25;
 
     private PackageFinder() {
@@ -30,23 +24,20 @@ public class PackageFinder {
         return validatedPageNr * PACKAGES_PER_PAGE;
     }
 
-    public static OptionalLong findPageWithPackage(String path, List<JcrPackage> packages) {
-        long packageIndex = -1;
+    public static OptionalLong findPageWithPackage(String path, List<PackageDefinition> packages) {
+        int packageIndex = indexOfPackage(path, packages);
+        return packageIndex > -1
+                ? OptionalLong.of(getNumberOfPages(packageIndex + 1L))
+                : OptionalLong.empty();
+    }
+
+    public static int indexOfPackage(String path, List<PackageDefinition> packages) {
         for (int i = 0; i < packages.size(); i++) {
-            try {
-                JcrPackage jcrPackage = packages.get(i);
-                Node packageNode = jcrPackage.getNode();
-                if (packageNode != null && path.equals(packageNode.getPath())) {
-                    packageIndex = i;
-                    break;
-                }
-            } catch (RepositoryException e) {
-                LOG.warn("Could not get Node for JCR package", e);
+            if (path.equals(packages.get(i).getPath())) {
+                return i;
             }
         }
-        return packageIndex > -1
-                ? OptionalLong.of(getNumberOfPages(packageIndex + 1))
-                : OptionalLong.empty();
+        return -1;
     }
 
 }
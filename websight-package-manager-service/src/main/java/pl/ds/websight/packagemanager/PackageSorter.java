@@ -0,0 +1,143 @@
+package pl.ds.websight.packagemanager;
+
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
+import pl.ds.websight.packagemanager.rest.requestparameters.SortBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Selects pages of packages in {@link SortBy#getComparator()} order. Sort keys are extracted once per package and the page is
+ * selected with a bounded heap, so only as many packages as needed to reach the end of the page are kept in sorted order.
+ */
+public class PackageSorter {
+
+    private final List<PackageDefinition> definitions;
+    private final long[] sortValues;
+    private final String[] sortNames;
+
+    public PackageSorter(List<PackageDefinition> definitions, SortBy sortBy) {
+        this.definitions = definitions;
+        int size = definitions.size();
+        this.sortValues = new long[size];
+        this.sortNames = new String[size];
+        for (int i = 0; i < size; i++) {
+            PackageDefinition definition = definitions.get(i);
+            sortValues[i] = sortBy.getSortValue(definition);
+            sortNames[i] = sortBy.getSortName(definition);
+        }
+    }
+
+    public List<PackageDefinition> select(long offset, int limit) {
+        int size = definitions.size();
+        if (offset >= size || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int heapCapacity = (int) Math.min(size, offset + limit);
+        // Max-heap holding the first 'heapCapacity' packages found so far, the last of them on top
+        int[] heap = new int[heapCapacity];
+        int heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (heapSize < heapCapacity) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++);
+            } else if (compare(i, heap[0]) < 0) {
+                heap[0] = i;
+                siftDown(heap, 0, heapSize);
+            }
+        }
+        for (int end = heapSize - 1; end > 0; end--) {
+            swap(heap, 0, end);
+            siftDown(heap, 0, end);
+        }
+        List<PackageDefinition> page = new ArrayList<>(heapSize - (int) offset);
+        for (int i = (int) offset; i < heapSize; i++) {
+            page.add(definitions.get(heap[i]));
+        }
+        return page;
+    }
+
+    /**
+     * Returns position of package in sorted packages, or -1 if there is no package with given path.
+     */
+    public int positionOf(String path) {
+        int index = -1;
+        for (int i = 0; i < definitions.size() && index == -1; i++) {
+            if (path.equals(definitions.get(i).getPath())) {
+                index = i;
+            }
+        }
+        if (index == -1) {
+            return -1;
+        }
+        int position = 0;
+        for (int i = 0; i < definitions.size(); i++) {
+            if (compare(i, index) < 0) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private int compare(int first, int second) {
+        int comparison = Long.compare(sortValues[first], sortValues[second]);
+        if (comparison != 0) {
+            return comparison;
+        }
+        String firstName = sortNames[first];
+        String secondName = sortNames[second];
+        if (firstName != null || secondName != null) {
+            if (firstName == null) {
+                return 1;
+            }
+            if (secondName == null) {
+                return -1;
+            }
+            comparison = firstName.compareTo(secondName);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return definitions.get(first).getPath().compareTo(definitions.get(second).getPath());
+    }
+
+    private void siftUp(int[] heap, int index) {
+        int child = index;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (compare(heap[child], heap[parent]) <= 0) {
+                return;
+            }
+            swap(heap, child, parent);
+            child = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int index, int heapSize) {
+        int parent = index;
+        while (true) {
+            int largest = parent;
+            int left = 2 * parent + 1;
+            int right = left + 1;
+            if (left < heapSize && compare(heap[left], heap[largest]) > 0) {
+                largest = left;
+            }
+            if (right < heapSize && compare(heap[right], heap[largest]) > 0) {
+                largest = right;
+            }
+            if (largest == parent) {
+                return;
+            }
+            swap(heap, parent, largest);
+            parent = largest;
+        }
+    }
+
+    private static void swap(int[] heap, int first, int second) {
+        int tmp = heap[first];
+        heap[first] = heap[second];
+        heap[second] = tmp;
+    }
+
+}
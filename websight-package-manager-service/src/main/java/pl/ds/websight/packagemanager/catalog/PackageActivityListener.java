@@ -0,0 +1,53 @@
+package pl.ds.websight.packagemanager.catalog;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.event.jobs.NotificationConstants;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import pl.ds.websight.packagemanager.util.JobUtil;
+
+import java.util.List;
+
+/**
+ * Increases {@link PackageCatalog} revision when package actions change, as responses listing packages contain their last
+ * action, action log and nearest scheduled action.
+ */
+@Component(
+        service = { EventHandler.class, ResourceChangeListener.class },
+        property = {
+                EventConstants.EVENT_TOPIC + "=org/apache/sling/event/notification/job/*",
+                ResourceChangeListener.PATHS + '=' + PackageActivityListener.LOGS_PATH,
+                ResourceChangeListener.PATHS + '=' + PackageActivityListener.SCHEDULED_JOBS_PATH,
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.CHANGES + "=CHANGED"
+        })
+public class PackageActivityListener implements EventHandler, ResourceChangeListener {
+
+    static final String LOGS_PATH = "/var/websight/websight-package-manager-service/logs"; //NOSONAR
+
+    // Default location of scheduled jobs of Sling Job Manager
+    static final String SCHEDULED_JOBS_PATH = "/var/eventing/scheduled-jobs"; //NOSONAR
+
+    @Reference
+    private PackageCatalog packageCatalog;
+
+    @Override
+    public void handleEvent(Event event) {
+        Object jobTopic = event.getProperty(NotificationConstants.NOTIFICATION_PROPERTY_JOB_TOPIC);
+        if (jobTopic instanceof String && JobUtil.isPackageManagerJob((String) jobTopic)) {
+            packageCatalog.increaseRevision();
+        }
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        packageCatalog.increaseRevision();
+    }
+
+}
@@ -0,0 +1,392 @@
+package pl.ds.websight.packagemanager.catalog;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.vault.util.JcrConstants;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
+import pl.ds.websight.packagemanager.util.JcrPackageUtil;
+import pl.ds.websight.packagemanager.util.JobUtil;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keeps definitions of all packages in memory, so packages are listed without traversing packages tree. Catalog is loaded in
+ * background by service user, callers traverse packages tree until it is available. Packages are refreshed when observation
+ * reports their changes, or right away by actions changing them.
+ */
+@Component(
+        service = { PackageCatalog.class, ResourceChangeListener.class },
+        property = {
+                ResourceChangeListener.PATHS + '=' + PackageCatalog.CATALOG_ROOT_PATH,
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.CHANGES + "=CHANGED"
+        })
+public class PackageCatalog implements ResourceChangeListener, ExternalResourceChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageCatalog.class);
+
+    static final String CATALOG_ROOT_PATH = "/etc/packages"; //NOSONAR
+
+    private static final String SNAPSHOT_NODE_NAME = ".snapshot";
+    private static final String PACKAGE_CONTENT_SUFFIX = '/' + JcrConstants.JCR_CONTENT;
+
+    // Service user of this subservice reads packages tree
+    private static final String SUBSERVICE_NAME = "catalog";
+
+    private static final int MAX_CACHED_USERS = 100;
+
+    // Replaced as a whole when catalog is loaded, so readers never see partially loaded catalog
+    private volatile NavigableMap<String, PackageDefinition> packagesByPath = new ConcurrentSkipListMap<>();
+
+    // Paths changed since catalog started loading, refreshed once catalog is loaded
+    private final Queue<String> pendingPaths = new ConcurrentLinkedQueue<>();
+
+    // Identifies this instance of catalog, so revisions counted by other cluster nodes or before restart are never matched
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final AtomicLong revision = new AtomicLong();
+
+    // Changes after packages held by catalog are reloaded or refreshed, unlike revision it ignores package actions
+    private final AtomicLong packagesRevision = new AtomicLong();
+
+    // Folders readable by recently active users, checked once for every revision of packages
+    private final Map<String, ReadableFolders> readableFoldersByUser = Collections.synchronizedMap(
+            new LinkedHashMap<String, ReadableFolders>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ReadableFolders> eldest) {
+                    return size() > MAX_CACHED_USERS;
+                }
+            });
+
+    // Serializes refreshes of packages and replacing them by loaded ones, readers are never blocked
+    private final Object refreshLock = new Object();
+
+    private final AtomicBoolean loading = new AtomicBoolean();
+    private volatile boolean loaded;
+
+    private ExecutorService loader;
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Activate
+    private void activate() {
+        loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websight-package-manager-catalog-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleLoad();
+    }
+
+    /**
+     * Returns whether catalog is loaded, otherwise its loading is started in background.
+     */
+    public boolean isAvailable() {
+        if (!loaded) {
+            scheduleLoad();
+        }
+        return loaded;
+    }
+
+    /**
+     * Returns revision of packages tree, which changes whenever observation reports a change under packages root or
+     * {@link PackageActivityListener} reports a change of package actions.
+     */
+    public long getRevision() {
+        return revision.get();
+    }
+
+    /**
+     * Returns {@link #getRevision()} qualified by identifier of this catalog instance, which is unique across cluster nodes and
+     * restarts, so it may be used to validate responses cached by clients.
+     */
+    public String getRevisionTag() {
+        return instanceId + ':' + revision.get();
+    }
+
+    public void increaseRevision() {
+        revision.incrementAndGet();
+    }
+
+    long getPackagesRevision() {
+        return packagesRevision.get();
+    }
+
+    Collection<PackageDefinition> getPackages() {
+        return packagesByPath.values();
+    }
+
+    /**
+     * Finds packages readable by user of given session, packages which user cannot read are left out before they are counted,
+     * sorted or filtered. Access is checked once for every folder of packages and cached until packages change.
+     */
+    public List<PackageDefinition> findPackages(Session session, String searchRootPath, boolean deep) {
+        return streamPackages(session, searchRootPath, deep).collect(toList());
+    }
+
+    /**
+     * Lazy variant of {@link #findPackages(Session, String, boolean)}, packages are read from catalog and checked while they are
+     * consumed, in order of their paths.
+     */
+    public Stream<PackageDefinition> streamPackages(Session session, String searchRootPath, boolean deep) {
+        String searchPrefix = StringUtils.appendIfMissing(searchRootPath, "/");
+        String searchParentPath = StringUtils.removeEnd(searchPrefix, "/");
+        ReadableFolders readableFolders = getReadableFolders(session);
+        return getDescendants(packagesByPath, searchPrefix).values().stream()
+                .filter(definition -> deep || searchParentPath.equals(definition.getParentPath()))
+                .filter(definition -> readableFolders.isReadable(session, definition.getParentPath()));
+    }
+
+    private ReadableFolders getReadableFolders(Session session) {
+        long currentPackagesRevision = packagesRevision.get();
+        return readableFoldersByUser.compute(session.getUserID(), (userId, readableFolders) ->
+                readableFolders != null && readableFolders.packagesRevision == currentPackagesRevision ?
+                        readableFolders :
+                        new ReadableFolders(currentPackagesRevision));
+    }
+
+    /**
+     * Refreshes packages under given path right away and increases revision. Called by actions changing packages, so packages
+     * listed right after the change do not depend on observation, which is asynchronous.
+     */
+    public void refresh(String path) {
+        if (addPendingPath(path)) {
+            refreshPendingPaths();
+        }
+        increaseRevision();
+    }
+
+    // Revision is increased after packages are refreshed, so results cached for new revision contain the change
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        boolean pathsAdded = false;
+        for (ResourceChange change : changes) {
+            pathsAdded |= addPendingPath(change.getPath());
+        }
+        if (pathsAdded) {
+            refreshPendingPaths();
+        }
+        increaseRevision();
+    }
+
+    // Changes are kept only while catalog is loading or loaded, otherwise they are read by the next load
+    private boolean addPendingPath(String changedPath) {
+        String pathToRefresh = getPathToRefresh(changedPath);
+        if (pathToRefresh == null || !(loading.get() || loaded)) {
+            return false;
+        }
+        pendingPaths.add(pathToRefresh);
+        return true;
+    }
+
+    private void refreshPendingPaths() {
+        if (loaded) {
+            refresh();
+        }
+    }
+
+    private void refresh() {
+        synchronized (refreshLock) {
+            Set<String> pathsToRefresh = new TreeSet<>();
+            String pendingPath;
+            while ((pendingPath = pendingPaths.poll()) != null) {
+                pathsToRefresh.add(pendingPath);
+            }
+            if (pathsToRefresh.isEmpty() || !loaded) {
+                return;
+            }
+            try (ResourceResolver resolver = getServiceResolver()) {
+                Session session = resolver != null ? resolver.adaptTo(Session.class) : null;
+                if (session == null) {
+                    LOG.warn("Could not access session to refresh package catalog, it will be reloaded");
+                    reload();
+                    return;
+                }
+                String lastRefreshedPath = null;
+                for (String path : pathsToRefresh) {
+                    if (lastRefreshedPath == null || !path.startsWith(lastRefreshedPath + '/')) {
+                        refresh(session, path);
+                        lastRefreshedPath = path;
+                    }
+                }
+                packagesRevision.incrementAndGet();
+            } catch (RepositoryException e) {
+                LOG.warn("Could not refresh package catalog, it will be reloaded", e);
+                reload();
+            }
+        }
+    }
+
+    private void reload() {
+        loaded = false;
+        scheduleLoad();
+    }
+
+    // Packages under path are loaded before they replace previous ones, so readers never see the path empty meanwhile
+    private void refresh(Session session, String path) throws RepositoryException {
+        NavigableMap<String, PackageDefinition> refreshedPackages = new TreeMap<>();
+        if (session.nodeExists(path)) {
+            Node node = session.getNode(path);
+            if (JcrPackageUtil.isValidPackageNode(node)) {
+                put(refreshedPackages, new PackageDefinition(node));
+            } else {
+                loadPackages(node, refreshedPackages);
+            }
+        }
+        NavigableMap<String, PackageDefinition> packages = packagesByPath;
+        packages.putAll(refreshedPackages);
+        getDescendants(packages, path + '/').keySet().removeIf(packagePath -> !refreshedPackages.containsKey(packagePath));
+        if (!refreshedPackages.containsKey(path)) {
+            packages.remove(path);
+        }
+        LOG.debug("Refreshed package catalog under: {}", path);
+    }
+
+    private static String getPathToRefresh(String changedPath) {
+        if (!changedPath.startsWith(JcrPackageUtil.PACKAGES_ROOT_PATH) || changedPath.contains('/' + SNAPSHOT_NODE_NAME)) {
+            return null;
+        }
+        int packageContentIndex = changedPath.indexOf(PACKAGE_CONTENT_SUFFIX);
+        return packageContentIndex > 0 ? changedPath.substring(0, packageContentIndex) : changedPath;
+    }
+
+    // Changes reported since loading is scheduled are kept, so they are refreshed once loaded packages replace previous ones
+    private void scheduleLoad() {
+        if (loading.compareAndSet(false, true)) {
+            pendingPaths.clear();
+            try {
+                loader.execute(this::load);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Package catalog is not loaded, as it is deactivated", e);
+                loading.set(false);
+            }
+        }
+    }
+
+    private void load() {
+        try (ResourceResolver resolver = getServiceResolver()) {
+            Session session = resolver != null ? resolver.adaptTo(Session.class) : null;
+            if (session == null) {
+                LOG.warn("Could not access session to load package catalog");
+                return;
+            }
+            NavigableMap<String, PackageDefinition> loadedPackages = new ConcurrentSkipListMap<>();
+            if (session.nodeExists(CATALOG_ROOT_PATH)) {
+                loadPackages(session.getNode(CATALOG_ROOT_PATH), loadedPackages);
+            }
+            synchronized (refreshLock) {
+                packagesByPath = loadedPackages;
+                packagesRevision.incrementAndGet();
+                loaded = true;
+            }
+            LOG.info("Loaded {} packages into package catalog", loadedPackages.size());
+        } catch (RepositoryException e) {
+            LOG.warn("Could not load package catalog", e);
+        } finally {
+            loading.set(false);
+        }
+        refreshPendingPaths();
+        increaseRevision();
+    }
+
+    private static void loadPackages(Node root, NavigableMap<String, PackageDefinition> packages) throws RepositoryException {
+        NodeIterator nodeIterator = root.getNodes();
+        while (nodeIterator.hasNext()) {
+            Node child = nodeIterator.nextNode();
+            if (SNAPSHOT_NODE_NAME.equals(child.getName())) {
+                continue;
+            }
+            if (JcrPackageUtil.isValidPackageNode(child)) {
+                put(packages, new PackageDefinition(child));
+            } else if (child.hasNodes()) {
+                loadPackages(child, packages);
+            }
+        }
+    }
+
+    private static void put(NavigableMap<String, PackageDefinition> packages, PackageDefinition definition) {
+        if (definition.getPath() != null) {
+            packages.put(definition.getPath(), definition);
+        }
+    }
+
+    private static NavigableMap<String, PackageDefinition> getDescendants(NavigableMap<String, PackageDefinition> packages,
+            String pathPrefix) {
+        return packages.subMap(pathPrefix, true, pathPrefix + Character.MAX_VALUE, false);
+    }
+
+    private ResourceResolver getServiceResolver() {
+        return JobUtil.getServiceResolver(resolverFactory, SUBSERVICE_NAME);
+    }
+
+    private static boolean nodeExists(Session session, String path) {
+        try {
+            return session.nodeExists(path);
+        } catch (RepositoryException e) {
+            LOG.debug("Could not check if node exists", e);
+            return false;
+        }
+    }
+
+    @Deactivate
+    private void deactivate() {
+        loader.shutdownNow();
+        loaded = false;
+        pendingPaths.clear();
+        readableFoldersByUser.clear();
+        packagesByPath = new ConcurrentSkipListMap<>();
+    }
+
+    private static final class ReadableFolders {
+
+        private final long packagesRevision;
+        private final Map<String, Boolean> readableByPath = new ConcurrentHashMap<>();
+
+        private ReadableFolders(long packagesRevision) {
+            this.packagesRevision = packagesRevision;
+        }
+
+        private boolean isReadable(Session session, String folderPath) {
+            return readableByPath.computeIfAbsent(folderPath, path -> nodeExists(session, path));
+        }
+    }
+
+}
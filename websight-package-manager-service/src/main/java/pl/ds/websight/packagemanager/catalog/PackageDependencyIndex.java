@@ -0,0 +1,151 @@
+package pl.ds.websight.packagemanager.catalog;
+
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.jackrabbit.vault.packaging.Version;
+import org.apache.jackrabbit.vault.packaging.VersionRange;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
+
+import javax.jcr.RepositoryException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Resolves package dependencies against versions of installed packages held by {@link PackageCatalog}, instead of looking up
+ * the package registry for every dependency. Versions are indexed by group and name of packages, the index is rebuilt in
+ * background when packages are installed, uninstalled, uploaded or deleted. Dependencies are resolved by the package registry
+ * when catalog is not available or while the index is rebuilt.
+ */
+@Component(service = PackageDependencyIndex.class)
+public class PackageDependencyIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageDependencyIndex.class);
+
+    @Reference
+    private PackageCatalog packageCatalog;
+
+    private volatile InstalledVersions installedVersions;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private ExecutorService rebuilder;
+
+    @Activate
+    private void activate() {
+        rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websight-package-manager-dependency-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Dependency[] getUnresolvedDependencies(JcrPackage jcrPackage) throws RepositoryException {
+        JcrPackageDefinition definition = jcrPackage.getDefinition();
+        return definition != null ? getUnresolvedDependencies(jcrPackage, definition.getDependencies()) : Dependency.EMPTY;
+    }
+
+    public Dependency[] getUnresolvedDependencies(JcrPackage jcrPackage, Dependency[] dependencies) throws RepositoryException {
+        if (dependencies.length == 0) {
+            return Dependency.EMPTY;
+        }
+        InstalledVersions versions = packageCatalog.isAvailable() ? getInstalledVersions() : null;
+        if (versions == null) {
+            return jcrPackage.getUnresolvedDependencies();
+        }
+        List<Dependency> unresolvedDependencies = new ArrayList<>();
+        for (Dependency dependency : dependencies) {
+            if (!versions.isResolved(dependency)) {
+                unresolvedDependencies.add(dependency);
+            }
+        }
+        return unresolvedDependencies.toArray(Dependency.EMPTY);
+    }
+
+    // Returns null when index does not reflect current packages, rebuilding it is started then
+    private InstalledVersions getInstalledVersions() {
+        InstalledVersions versions = installedVersions;
+        if (versions != null && versions.packagesRevision == packageCatalog.getPackagesRevision()) {
+            return versions;
+        }
+        scheduleRebuild();
+        return null;
+    }
+
+    private void scheduleRebuild() {
+        if (rebuilding.compareAndSet(false, true)) {
+            try {
+                rebuilder.execute(this::rebuild);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Dependency index is not rebuilt, as it is deactivated", e);
+                rebuilding.set(false);
+            }
+        }
+    }
+
+    // Revision is read before packages, so index built from packages changed meanwhile is rebuilt again
+    private void rebuild() {
+        try {
+            long packagesRevision = packageCatalog.getPackagesRevision();
+            installedVersions = new InstalledVersions(packagesRevision, packageCatalog.getPackages());
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    @Deactivate
+    private void deactivate() {
+        rebuilder.shutdownNow();
+        installedVersions = null;
+    }
+
+    private static final class InstalledVersions {
+
+        private final long packagesRevision;
+        private final Map<String, NavigableSet<Version>> versionsByName = new HashMap<>();
+
+        private InstalledVersions(long packagesRevision, Iterable<PackageDefinition> definitions) {
+            this.packagesRevision = packagesRevision;
+            for (PackageDefinition definition : definitions) {
+                PackageId packageId = definition.getPackageId();
+                // Package is installed when it was ever unpacked, as checked by the package registry
+                if (packageId != null && definition.getLastUnpacked() != null) {
+                    versionsByName.computeIfAbsent(getKey(packageId.getGroup(), packageId.getName()), key -> new TreeSet<>())
+                            .add(packageId.getVersion());
+                }
+            }
+        }
+
+        private boolean isResolved(Dependency dependency) {
+            NavigableSet<Version> versions = versionsByName.get(getKey(dependency.getGroup(), dependency.getName()));
+            if (versions == null) {
+                return false;
+            }
+            VersionRange range = dependency.getRange();
+            Version low = range.getLow();
+            // Lowest version matching lower bound is in range if any installed version is
+            NavigableSet<Version> candidates = low != null ? versions.tailSet(low, range.isLowInclusive()) : versions;
+            return !candidates.isEmpty() && range.isInRange(candidates.first());
+        }
+
+        private static String getKey(String group, String name) {
+            return group + ':' + name;
+        }
+    }
+
+}
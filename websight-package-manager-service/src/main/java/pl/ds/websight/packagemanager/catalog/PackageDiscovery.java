@@ -0,0 +1,51 @@
+package pl.ds.websight.packagemanager.catalog;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * Provides source of packages listed and counted by package manager actions, so all of them are configured at once.
+ */
+@Component(service = PackageDiscovery.class)
+@Designate(ocd = PackageDiscovery.Config.class)
+public class PackageDiscovery {
+
+    @Reference
+    private PackageCatalog packageCatalog;
+
+    private PackageDiscoveryMode mode;
+
+    /**
+     * Returns configured discovery mode, packages tree is traversed instead of catalog until catalog is loaded.
+     */
+    public PackageDiscoveryMode getMode() {
+        if (mode == PackageDiscoveryMode.CATALOG && !packageCatalog.isAvailable()) {
+            return PackageDiscoveryMode.TRAVERSAL;
+        }
+        return mode;
+    }
+
+    @Activate
+    private void activate(Config config) {
+        mode = config.package_discovery();
+    }
+
+    @ObjectClassDefinition(name = "WebSight Package Manager: Package Discovery Configuration")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Package discovery",
+                description = "Source of packages listed by 'find-packages' and counted by 'get-groups' actions. 'CATALOG' serves " +
+                        "packages from in-memory catalog kept up to date by repository observation, 'QUERY' runs query backed by " +
+                        "'websightPackageManagerPackages' index, 'TRAVERSAL' traverses packages tree on every request, " +
+                        "'PARALLEL_TRAVERSAL' traverses groups of packages tree in parallel on every request."
+        )
+        PackageDiscoveryMode package_discovery() default PackageDiscoveryMode.CATALOG; // NOSONAR
+
+    }
+
+}
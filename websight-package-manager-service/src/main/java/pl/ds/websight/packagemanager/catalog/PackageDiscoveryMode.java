@@ -0,0 +1,25 @@
+package pl.ds.websight.packagemanager.catalog;
+
+public enum PackageDiscoveryMode {
+
+    /**
+     * Packages are served from {@link PackageCatalog}, which is kept up to date by repository observation.
+     */
+    CATALOG,
+
+    /**
+     * Packages are found by query backed by the 'websightPackageManagerPackages' index.
+     */
+    QUERY,
+
+    /**
+     * Packages are found by traversing the packages tree on every request.
+     */
+    TRAVERSAL,
+
+    /**
+     * Packages are found by traversing groups of packages tree in parallel on every request.
+     */
+    PARALLEL_TRAVERSAL
+
+}
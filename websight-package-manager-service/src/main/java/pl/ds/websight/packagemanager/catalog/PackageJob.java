@@ -0,0 +1,48 @@
+package pl.ds.websight.packagemanager.catalog;
+
+import org.apache.sling.event.jobs.Job;
+
+/**
+ * Queued or running package manager job, as tracked by {@link PackageJobRegistry}.
+ */
+public final class PackageJob {
+
+    private final String id;
+    private final String topic;
+    private final String packagePath;
+    private final String applicantId;
+    private final Job.JobState state;
+
+    PackageJob(String id, String topic, String packagePath, String applicantId, Job.JobState state) {
+        this.id = id;
+        this.topic = topic;
+        this.packagePath = packagePath;
+        this.applicantId = applicantId;
+        this.state = state;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getPackagePath() {
+        return packagePath;
+    }
+
+    public String getApplicantId() {
+        return applicantId;
+    }
+
+    public Job.JobState getState() {
+        return state;
+    }
+
+    PackageJob withState(Job.JobState newState) {
+        return new PackageJob(id, topic, packagePath, applicantId, newState);
+    }
+
+}
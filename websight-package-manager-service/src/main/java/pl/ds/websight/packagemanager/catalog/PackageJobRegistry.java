@@ -0,0 +1,457 @@
+package pl.ds.websight.packagemanager.catalog;
+
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.JobManager.QueryType;
+import org.apache.sling.event.jobs.NotificationConstants;
+import org.apache.sling.event.jobs.ScheduledJobInfo;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventConstants;
+import org.osgi.service.event.EventHandler;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.JobProperties;
+import pl.ds.websight.packagemanager.util.JobUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps queued and running package manager jobs and schedules of package actions by package path, so they are not queried
+ * from {@link JobManager} for every listed package. Jobs are tracked by Sling job notifications, which are delivered only
+ * on this instance, so tracked jobs are periodically confirmed with job manager and all jobs are reconciled with it less often,
+ * to track jobs started or finished on other cluster instances. Schedules are loaded again after scheduled jobs storage changes.
+ */
+@Component(
+        service = { PackageJobRegistry.class, EventHandler.class, ResourceChangeListener.class, Runnable.class },
+        property = {
+                EventConstants.EVENT_TOPIC + "=org/apache/sling/event/notification/job/*",
+                ResourceChangeListener.PATHS + '=' + PackageActivityListener.SCHEDULED_JOBS_PATH,
+                ResourceChangeListener.CHANGES + "=ADDED",
+                ResourceChangeListener.CHANGES + "=REMOVED",
+                ResourceChangeListener.CHANGES + "=CHANGED"
+        })
+@Designate(ocd = PackageJobRegistry.Config.class)
+public class PackageJobRegistry implements EventHandler, ResourceChangeListener, Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageJobRegistry.class);
+    @SuppressWarnings("unchecked")
+    private static final Map<String, Object>[] NO_TEMPLATES = new Map[0];
+
+    @Reference
+    private JobManager jobManager;
+
+    @Reference
+    private PackageCatalog packageCatalog;
+
+    private final Map<String, PackageJob> jobsById = new HashMap<>();
+    private final Map<String, List<PackageJob>> jobsByPackagePath = new HashMap<>();
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile Map<String, List<ScheduledJobInfo>> schedulesByPackagePath;
+    private long schedulesGeneration;
+
+    private long reconciliationPeriod;
+    private volatile long lastReconciliation;
+
+    @Activate
+    private void activate(Config config) {
+        reconciliationPeriod = TimeUnit.SECONDS.toMillis(Math.max(1L, config.reconciliation_period()));
+        reconcile();
+    }
+
+    // Tracked jobs are confirmed once per period for all clients following their states
+    @Override
+    public void run() {
+        if (System.currentTimeMillis() - lastReconciliation >= reconciliationPeriod) {
+            reconcile();
+        } else {
+            confirmJobs();
+        }
+    }
+
+    /**
+     * Replaces tracked jobs with queued and running jobs found by job manager. Listeners are notified with paths of packages
+     * which jobs changed.
+     */
+    public void reconcile() {
+        lastReconciliation = System.currentTimeMillis();
+        Map<String, PackageJob> foundJobsById = new HashMap<>();
+        // QueryType.ALL surprisingly returns only running and queued jobs
+        for (Job job : jobManager.findJobs(QueryType.ALL, null, -1, NO_TEMPLATES)) {
+            PackageJob packageJob = toPackageJob(job);
+            if (packageJob != null) {
+                foundJobsById.put(packageJob.getId(), packageJob);
+            }
+        }
+        Map<String, PackageJob> trackedJobsById;
+        synchronized (this) {
+            trackedJobsById = new HashMap<>(jobsById);
+        }
+        // Jobs registered after job manager was queried are kept, as long as they are still queued or running
+        for (PackageJob trackedJob : trackedJobsById.values()) {
+            if (!foundJobsById.containsKey(trackedJob.getId())) {
+                PackageJob packageJob = toPackageJob(jobManager.getJobById(trackedJob.getId()));
+                if (packageJob != null && isQueuedOrActive(packageJob.getState())) {
+                    foundJobsById.put(packageJob.getId(), packageJob);
+                }
+            }
+        }
+        Set<String> changedPackagesPaths = new HashSet<>();
+        synchronized (this) {
+            for (PackageJob trackedJob : jobsById.values()) {
+                PackageJob foundJob = foundJobsById.get(trackedJob.getId());
+                if (foundJob == null || !foundJob.getState().equals(trackedJob.getState())) {
+                    changedPackagesPaths.add(trackedJob.getPackagePath());
+                }
+            }
+            for (PackageJob foundJob : foundJobsById.values()) {
+                if (!jobsById.containsKey(foundJob.getId())) {
+                    changedPackagesPaths.add(foundJob.getPackagePath());
+                }
+            }
+            jobsById.clear();
+            jobsByPackagePath.clear();
+            foundJobsById.values().forEach(this::put);
+        }
+        clearSchedules();
+        LOG.debug("Reconciled {} queued and running package jobs", foundJobsById.size());
+        if (!changedPackagesPaths.isEmpty()) {
+            packageCatalog.increaseRevision();
+            changedPackagesPaths.forEach(this::notifyListeners);
+        }
+    }
+
+    /**
+     * Registers job added by this instance without waiting for its notification.
+     */
+    public void register(Job job) {
+        PackageJob packageJob = toPackageJob(job);
+        if (packageJob != null) {
+            synchronized (this) {
+                put(packageJob);
+            }
+            packageCatalog.increaseRevision();
+            notifyListeners(packageJob.getPackagePath());
+        }
+    }
+
+    public PackageJob getJob(String packagePath) {
+        synchronized (this) {
+            return getFirstJob(jobsByPackagePath.get(packagePath));
+        }
+    }
+
+    /**
+     * Gets job of package confirmed by job manager, so jobs which notifications were missed never block new package actions.
+     */
+    public PackageJob getConfirmedJob(String packagePath) {
+        PackageJob job = getJob(packagePath);
+        while (job != null) {
+            Job managedJob = jobManager.getJobById(job.getId());
+            if (managedJob != null && isQueuedOrActive(managedJob.getJobState())) {
+                return job;
+            }
+            synchronized (this) {
+                remove(job.getId());
+                job = getFirstJob(jobsByPackagePath.get(packagePath));
+            }
+            notifyListeners(packagePath);
+        }
+        return null;
+    }
+
+    /**
+     * Updates tracked jobs with their states in job manager, so jobs started or finished on other cluster instances are
+     * tracked before registry is reconciled. Listeners are notified with paths of packages which jobs changed.
+     */
+    public void confirmJobs() {
+        List<PackageJob> trackedJobs;
+        synchronized (this) {
+            trackedJobs = new ArrayList<>(jobsById.values());
+        }
+        Set<String> changedPackagesPaths = new HashSet<>();
+        for (PackageJob trackedJob : trackedJobs) {
+            Job managedJob = jobManager.getJobById(trackedJob.getId());
+            Job.JobState state = managedJob != null ? managedJob.getJobState() : null;
+            if (trackedJob.getState().equals(state)) {
+                continue;
+            }
+            synchronized (this) {
+                if (!isQueuedOrActive(state)) {
+                    remove(trackedJob.getId());
+                } else if (jobsById.containsKey(trackedJob.getId())) {
+                    put(trackedJob.withState(state));
+                }
+            }
+            changedPackagesPaths.add(trackedJob.getPackagePath());
+        }
+        if (!changedPackagesPaths.isEmpty()) {
+            packageCatalog.increaseRevision();
+            changedPackagesPaths.forEach(this::notifyListeners);
+        }
+    }
+
+    public Map<String, PackageJob> getJobs(String... packagePaths) {
+        Map<String, PackageJob> jobs = new HashMap<>();
+        synchronized (this) {
+            for (String packagePath : packagePaths) {
+                PackageJob job = getFirstJob(jobsByPackagePath.get(packagePath));
+                if (job != null) {
+                    jobs.put(packagePath, job);
+                }
+            }
+        }
+        return jobs;
+    }
+
+    public ScheduledJobInfo getNearestScheduledJob(String packagePath) {
+        return getNearestScheduledJob(getSchedules().get(packagePath));
+    }
+
+    public Map<String, ScheduledJobInfo> getNearestScheduledJobs(String... packagePaths) {
+        Map<String, List<ScheduledJobInfo>> schedules = getSchedules();
+        Map<String, ScheduledJobInfo> nearestScheduledJobs = new HashMap<>();
+        for (String packagePath : packagePaths) {
+            ScheduledJobInfo nearestScheduledJob = getNearestScheduledJob(schedules.get(packagePath));
+            if (nearestScheduledJob != null) {
+                nearestScheduledJobs.put(packagePath, nearestScheduledJob);
+            }
+        }
+        return nearestScheduledJobs;
+    }
+
+    public Set<String> getScheduledPackagesPaths() {
+        return getSchedules().keySet();
+    }
+
+    /**
+     * Loads schedules again on next lookup, called after schedules are changed by this instance. Catalog revision is increased,
+     * as listed packages contain their nearest scheduled action.
+     */
+    public void invalidateSchedules() {
+        clearSchedules();
+        packageCatalog.increaseRevision();
+    }
+
+    // Generation is increased, so schedules loaded concurrently with invalidation are not published
+    private synchronized void clearSchedules() {
+        schedulesGeneration++;
+        schedulesByPackagePath = null;
+    }
+
+    @Override
+    public void handleEvent(Event event) {
+        Object jobTopic = event.getProperty(NotificationConstants.NOTIFICATION_PROPERTY_JOB_TOPIC);
+        Object jobId = event.getProperty(NotificationConstants.NOTIFICATION_PROPERTY_JOB_ID);
+        if (!(jobTopic instanceof String) || !(jobId instanceof String) || !JobUtil.isPackageManagerJob((String) jobTopic)) {
+            return;
+        }
+        PackageJob changedJob = null;
+        switch (event.getTopic()) {
+            case NotificationConstants.TOPIC_JOB_ADDED:
+                // Job could be already registered by this instance or started before notification was delivered
+                if (!isRegistered((String) jobId)) {
+                    changedJob = update(event, (String) jobId, Job.JobState.QUEUED);
+                }
+                break;
+            case NotificationConstants.TOPIC_JOB_STARTED:
+                changedJob = update(event, (String) jobId, Job.JobState.ACTIVE);
+                break;
+            case NotificationConstants.TOPIC_JOB_FAILED:
+                // Failed job is queued again to be retried, jobs out of retries are cancelled
+                changedJob = update(event, (String) jobId, Job.JobState.QUEUED);
+                break;
+            case NotificationConstants.TOPIC_JOB_FINISHED:
+            case NotificationConstants.TOPIC_JOB_CANCELLED:
+            case NotificationConstants.TOPIC_JOB_REMOVED:
+                synchronized (this) {
+                    changedJob = remove((String) jobId);
+                }
+                break;
+            default:
+                break;
+        }
+        if (changedJob != null) {
+            notifyListeners(changedJob.getPackagePath());
+        }
+    }
+
+    /**
+     * Adds listener notified with package path, when job of package is queued, started or is not tracked anymore.
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    private void notifyListeners(String packagePath) {
+        for (Consumer<String> listener : listeners) {
+            listener.accept(packagePath);
+        }
+    }
+
+    @Override
+    public void onChange(@NotNull List<ResourceChange> changes) {
+        invalidateSchedules();
+    }
+
+    private synchronized boolean isRegistered(String jobId) {
+        return jobsById.containsKey(jobId);
+    }
+
+    private PackageJob update(Event event, String jobId, Job.JobState state) {
+        synchronized (this) {
+            PackageJob job = jobsById.get(jobId);
+            if (job != null) {
+                put(job.withState(state));
+                return job;
+            }
+        }
+        String packagePath = JobProperties.getPackagePath(event);
+        PackageJob job = packagePath != null ?
+                new PackageJob(jobId, (String) event.getProperty(NotificationConstants.NOTIFICATION_PROPERTY_JOB_TOPIC), packagePath,
+                        JobProperties.getApplicantId(event), state) :
+                toPackageJob(jobManager.getJobById(jobId));
+        if (job != null) {
+            synchronized (this) {
+                put(job.withState(state));
+            }
+        }
+        return job;
+    }
+
+    private void put(PackageJob job) {
+        remove(job.getId());
+        jobsById.put(job.getId(), job);
+        jobsByPackagePath.computeIfAbsent(job.getPackagePath(), path -> new ArrayList<>(1)).add(job);
+    }
+
+    private PackageJob remove(String jobId) {
+        PackageJob job = jobsById.remove(jobId);
+        if (job == null) {
+            return null;
+        }
+        List<PackageJob> packageJobs = jobsByPackagePath.get(job.getPackagePath());
+        if (packageJobs != null) {
+            packageJobs.removeIf(packageJob -> packageJob.getId().equals(jobId));
+            if (packageJobs.isEmpty()) {
+                jobsByPackagePath.remove(job.getPackagePath());
+            }
+        }
+        return job;
+    }
+
+    // Running job takes precedence over queued ones
+    private static PackageJob getFirstJob(List<PackageJob> packageJobs) {
+        if (packageJobs == null || packageJobs.isEmpty()) {
+            return null;
+        }
+        return packageJobs.stream()
+                .filter(job -> Job.JobState.ACTIVE.equals(job.getState()))
+                .findFirst()
+                .orElse(packageJobs.get(0));
+    }
+
+    private static boolean isQueuedOrActive(Job.JobState state) {
+        return Job.JobState.QUEUED.equals(state) || Job.JobState.ACTIVE.equals(state);
+    }
+
+    private static PackageJob toPackageJob(Job job) {
+        if (job == null || !JobUtil.isPackageManagerJob(job.getTopic())) {
+            return null;
+        }
+        String packagePath = JobProperties.getPackagePath(job);
+        return packagePath != null ?
+                new PackageJob(job.getId(), job.getTopic(), packagePath, JobProperties.getApplicantId(job), job.getJobState()) :
+                null;
+    }
+
+    private Map<String, List<ScheduledJobInfo>> getSchedules() {
+        Map<String, List<ScheduledJobInfo>> schedules = schedulesByPackagePath;
+        if (schedules == null) {
+            long generation;
+            synchronized (this) {
+                generation = schedulesGeneration;
+            }
+            schedules = new HashMap<>();
+            for (ScheduledJobInfo scheduledJobInfo : JobUtil.findAllScheduledJobs(jobManager)) {
+                String packagePath = JobProperties.getPackagePath(scheduledJobInfo);
+                // Scheduled jobs without package path are not package actions
+                if (packagePath != null) {
+                    schedules.computeIfAbsent(packagePath, path -> new ArrayList<>(1)).add(scheduledJobInfo);
+                }
+            }
+            schedules = Collections.unmodifiableMap(schedules);
+            synchronized (this) {
+                if (generation == schedulesGeneration) {
+                    schedulesByPackagePath = schedules;
+                }
+            }
+        }
+        return schedules;
+    }
+
+    private static ScheduledJobInfo getNearestScheduledJob(Collection<ScheduledJobInfo> scheduledJobs) {
+        if (scheduledJobs == null) {
+            return null;
+        }
+        ScheduledJobInfo nearestScheduledJob = null;
+        for (ScheduledJobInfo scheduledJob : scheduledJobs) {
+            if (!scheduledJob.isSuspended() && !JobUtil.isScheduleObsolete(scheduledJob) && (nearestScheduledJob == null ||
+                    scheduledJob.getNextScheduledExecution().before(nearestScheduledJob.getNextScheduledExecution()))) {
+                nearestScheduledJob = scheduledJob;
+            }
+        }
+        return nearestScheduledJob;
+    }
+
+    @ObjectClassDefinition(name = "WebSight Package Manager: Package Job Registry Configuration")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Confirmation period",
+                description = "Period in seconds of confirming states of tracked package jobs with job manager, so jobs " +
+                        "started or finished on other cluster instances are followed by clients.",
+                type = AttributeType.LONG
+        )
+        long scheduler_period() default 15; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Reconciliation period",
+                description = "Period in seconds of reconciling all package jobs with job manager, so jobs started on other " +
+                        "cluster instances are tracked. Tracked jobs are confirmed with job manager more often, once per " +
+                        "confirmation period.",
+                type = AttributeType.LONG
+        )
+        long reconciliation_period() default 60; // NOSONAR
+
+        @AttributeDefinition(name = "Concurrent confirmation", description = "Allow confirming package jobs concurrently")
+        boolean scheduler_concurrent() default false; // NOSONAR
+
+    }
+
+}
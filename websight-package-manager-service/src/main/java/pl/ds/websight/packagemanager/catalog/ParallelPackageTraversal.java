@@ -0,0 +1,156 @@
+package pl.ds.websight.packagemanager.catalog;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
+import pl.ds.websight.packagemanager.util.JcrPackageUtil;
+import pl.ds.websight.packagemanager.util.JobUtil;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Traverses groups of packages tree in parallel. JCR sessions are not thread-safe, so every worker traverses groups using its
+ * own session impersonated as the requesting user.
+ */
+@Component(service = ParallelPackageTraversal.class)
+@Designate(ocd = ParallelPackageTraversal.Config.class)
+public class ParallelPackageTraversal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelPackageTraversal.class);
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private ForkJoinPool pool;
+
+    public List<PackageDefinition> findPackages(Session session, String rootPath, boolean deep) throws RepositoryException {
+        List<PackageDefinition> packages = new ArrayList<>();
+        List<String> groupPaths = new ArrayList<>();
+        NodeIterator nodeIterator = session.getNode(rootPath).getNodes();
+        while (nodeIterator.hasNext()) {
+            Node child = nodeIterator.nextNode();
+            if (".snapshot".equals(child.getName())) {
+                continue;
+            }
+            if (JcrPackageUtil.isValidPackageNode(child)) {
+                packages.add(new PackageDefinition(child));
+            } else if (deep && child.hasNodes()) {
+                groupPaths.add(child.getPath());
+            }
+        }
+        if (groupPaths.size() == 1) {
+            collectPackages(session.getNode(groupPaths.get(0)), packages);
+        } else if (!groupPaths.isEmpty()) {
+            Map<String, List<PackageDefinition>> packagesByGroup = traverseGroups(session.getUserID(), groupPaths);
+            groupPaths.forEach(groupPath -> packages.addAll(packagesByGroup.get(groupPath)));
+        }
+        return packages;
+    }
+
+    private Map<String, List<PackageDefinition>> traverseGroups(String userId, List<String> groupPaths) throws RepositoryException {
+        Queue<String> remainingGroupPaths = new ConcurrentLinkedQueue<>(groupPaths);
+        int workers = Math.min(pool.getParallelism(), groupPaths.size());
+        List<Callable<Map<String, List<PackageDefinition>>>> tasks = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            tasks.add(() -> traverseGroups(userId, remainingGroupPaths));
+        }
+        Map<String, List<PackageDefinition>> packagesByGroup = new HashMap<>();
+        try {
+            for (Future<Map<String, List<PackageDefinition>>> result : pool.invokeAll(tasks)) {
+                packagesByGroup.putAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Packages traversal was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RepositoryException) {
+                throw (RepositoryException) e.getCause();
+            }
+            throw new RepositoryException("Could not traverse packages", e.getCause());
+        }
+        return packagesByGroup;
+    }
+
+    private Map<String, List<PackageDefinition>> traverseGroups(String userId, Queue<String> groupPaths) throws RepositoryException {
+        try (ResourceResolver resolver = JobUtil.getImpersonatedResolver(resolverFactory, userId)) {
+            Session workerSession = resolver != null ? resolver.adaptTo(Session.class) : null;
+            if (workerSession == null) {
+                throw new RepositoryException("Could not access session of user: " + userId);
+            }
+            Map<String, List<PackageDefinition>> packagesByGroup = new HashMap<>();
+            String groupPath;
+            while ((groupPath = groupPaths.poll()) != null) {
+                List<PackageDefinition> groupPackages = new ArrayList<>();
+                if (workerSession.nodeExists(groupPath)) {
+                    collectPackages(workerSession.getNode(groupPath), groupPackages);
+                }
+                packagesByGroup.put(groupPath, groupPackages);
+            }
+            LOG.debug("Traversed {} groups of packages", packagesByGroup.size());
+            return packagesByGroup;
+        }
+    }
+
+    private static void collectPackages(Node root, List<PackageDefinition> packages) throws RepositoryException {
+        NodeIterator nodeIterator = root.getNodes();
+        while (nodeIterator.hasNext()) {
+            Node child = nodeIterator.nextNode();
+            if (".snapshot".equals(child.getName())) {
+                continue;
+            }
+            if (JcrPackageUtil.isValidPackageNode(child)) {
+                packages.add(new PackageDefinition(child));
+            } else if (child.hasNodes()) {
+                collectPackages(child, packages);
+            }
+        }
+    }
+
+    @Activate
+    private void activate(Config config) {
+        int parallelism = config.parallelism() > 0 ? config.parallelism() : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    @Deactivate
+    private void deactivate() {
+        pool.shutdownNow();
+    }
+
+    @ObjectClassDefinition(name = "WebSight Package Manager: Parallel Package Traversal Configuration")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Parallelism",
+                description = "Number of workers traversing groups of packages in parallel. Number of available processors is used " +
+                        "when not greater than 0.",
+                type = AttributeType.INTEGER
+        )
+        int parallelism() default 0; // NOSONAR
+
+    }
+
+}
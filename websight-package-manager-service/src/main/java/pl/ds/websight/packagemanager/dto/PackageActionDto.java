@@ -1,27 +1,21 @@
 package pl.ds.websight.packagemanager.dto;
 
-import org.apache.sling.commons.osgi.PropertiesUtil;
-import org.apache.sling.event.jobs.Job;
-import org.apache.sling.event.jobs.JobManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import pl.ds.websight.packagemanager.JobProperties;
+import pl.ds.websight.packagemanager.catalog.PackageJob;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
+import pl.ds.websight.packagemanager.packageaction.PackageActionSummary;
 import pl.ds.websight.packagemanager.rest.requestparameters.PackageActionCommand;
-import pl.ds.websight.packagemanager.util.JobUtil;
-import pl.ds.websight.packagemanager.util.PackageLogUtil;
 
-import javax.jcr.Node;
-import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
-import static java.util.stream.Collectors.toMap;
-
 public class PackageActionDto {
 
     private static final Logger LOG = LoggerFactory.getLogger(PackageActionDto.class);
@@ -51,19 +45,29 @@ public class PackageActionDto {
         return applicantId;
     }
 
-    public static PackageActionDto forPackagePath(JobManager jobManager, Session session, String packagePath) {
-        return forPackagePaths(jobManager, session, packagePath).getOrDefault(packagePath, UNKNOWN);
+    public static PackageActionDto forPackagePath(PackageJobRegistry jobRegistry, Session session, String packagePath) {
+        return forPackagePaths(jobRegistry, session, packagePath).getOrDefault(packagePath, UNKNOWN);
     }
 
-    public static Map<String, PackageActionDto> forPackagePaths(JobManager jobManager, Session session, String... packagePaths) {
+    public static Map<String, PackageActionDto> forPackagePaths(PackageJobRegistry jobRegistry, Session session, String... packagePaths) {
         String[] existingPackagesPaths = Stream.of(packagePaths)
                 .filter(path -> nodeExists(session, path))
                 .toArray(String[]::new);
-        Map<String, Job> jobs = JobUtil.findRunningAndQueuedJobs(jobManager, existingPackagesPaths).stream()
-                .collect(toMap(JobProperties::getPackagePath, job -> job, (job1, job2) -> job1));
+        return forReadablePackagePaths(jobRegistry, session, existingPackagesPaths);
+    }
+
+    /**
+     * Same as {@link #forPackagePaths(PackageJobRegistry, Session, String...)}, but for packages already found readable by user of
+     * given session, so their existence is not checked again.
+     */
+    public static Map<String, PackageActionDto> forReadablePackagePaths(PackageJobRegistry jobRegistry, Session session,
+            String... existingPackagesPaths) {
+        Map<String, PackageJob> jobs = jobRegistry.getJobs(existingPackagesPaths);
+        Map<String, PackageActionSummary> summaries = fetchSummaries(session, existingPackagesPaths);
         Map<String, PackageActionDto> result = new HashMap<>(existingPackagesPaths.length);
         for (String packagePath : existingPackagesPaths) {
-            result.put(packagePath, toFinishOrRunningPackageActionDto(jobs.get(packagePath), packagePath, session));
+            PackageJob job = jobs.get(packagePath);
+            result.put(packagePath, job != null ? toRunningPackageActionDto(job) : toFinishedPackageActionDto(summaries.get(packagePath)));
         }
         return result;
     }
@@ -77,43 +81,32 @@ public class PackageActionDto {
         }
     }
 
-    private static PackageActionDto toFinishOrRunningPackageActionDto(Job job, String packagePath, Session session) {
-        return job == null ?
-                processFinishedAction(packagePath, session) :
-                Optional.of(job)
-                        .map(Job::getTopic)
-                        .map(PackageActionCommand::fetchByJobTopic)
-                        .map(actionType -> new PackageActionDto(PackageActionStateDto.getState(job.getJobState()), actionType,
-                                JobProperties.getApplicantId(job)))
-                        .orElse(UNKNOWN);
-    }
-
-    private static PackageActionDto processFinishedAction(String packagePath, Session session) {
+    private static Map<String, PackageActionSummary> fetchSummaries(Session session, String... packagePaths) {
         try {
-            if (!session.nodeExists(packagePath)) {
-                return UNKNOWN;
-            }
-            String logPath = PackageLogUtil.getLogPath(packagePath);
-            if (!session.nodeExists(logPath)) {
-                return UNKNOWN;
-            }
-            Node logNode = session.getNode(logPath);
-            if (!logNode.hasProperty(PackageLogUtil.PN_LOG_PACKAGE_ACTION_TYPE)) {
-                return UNKNOWN;
-            }
-            Property actionTypeProp = logNode.getProperty(PackageLogUtil.PN_LOG_PACKAGE_ACTION_TYPE);
-            if (actionTypeProp.isMultiple() || !logNode.hasProperty(PackageLogUtil.PN_APPLICANT_ID)) {
-                return UNKNOWN;
-            }
-            PackageActionCommand actionType = getActionCommandIgnoreCase(PropertiesUtil.toString(actionTypeProp.getValue(), null));
-            return actionType != null ?
-                    new PackageActionDto(PackageActionStateDto.FINISHED, actionType,
-                            logNode.getProperty(PackageLogUtil.PN_APPLICANT_ID).getString()) :
-                    UNKNOWN;
+            return PackageActionSummary.fetch(session, packagePaths);
         } catch (RepositoryException e) {
-            LOG.debug("Could not get package action", e);
+            LOG.debug("Could not get package actions summaries", e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private static PackageActionDto toRunningPackageActionDto(PackageJob job) {
+        return Optional.of(job)
+                .map(PackageJob::getTopic)
+                .map(PackageActionCommand::fetchByJobTopic)
+                .map(actionType -> new PackageActionDto(PackageActionStateDto.getState(job.getState()), actionType,
+                        job.getApplicantId()))
+                .orElse(UNKNOWN);
+    }
+
+    private static PackageActionDto toFinishedPackageActionDto(PackageActionSummary summary) {
+        if (summary == null) {
             return UNKNOWN;
         }
+        PackageActionCommand actionType = getActionCommandIgnoreCase(summary.getActionType());
+        return actionType != null ?
+                new PackageActionDto(PackageActionStateDto.FINISHED, actionType, summary.getApplicantId()) :
+                UNKNOWN;
     }
 
     private static PackageActionCommand getActionCommandIgnoreCase(String enumName) {
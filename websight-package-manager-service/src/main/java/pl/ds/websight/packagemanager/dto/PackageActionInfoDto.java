@@ -36,14 +36,16 @@ public class PackageActionInfoDto {
         if (packageDefinition != null) {
             Calendar actionDate = packageDefinition.getCalendar(actionPropName);
             if (actionDate != null) {
-                String date = DateUtil.format(actionDate);
-                String executedBy = packageDefinition.get(actionPropName + "By");
-                return new PackageActionInfoDto(date, executedBy);
+                return create(actionDate, packageDefinition.get(actionPropName + "By"));
             }
         }
         return null;
     }
 
+    static PackageActionInfoDto create(Calendar actionDate, String executedBy) {
+        return actionDate != null ? new PackageActionInfoDto(DateUtil.format(actionDate), executedBy) : null;
+    }
+
     static PackageActionInfoDto createUploadPackageInfo(Node packageNode) {
         if (packageNode == null) {
             return null;
@@ -6,14 +6,18 @@ public class PackageActionReportDto {
 
     private final PackageActionDto action;
     private final List<String> logs;
+    private final Long logsStart;
+    private final String logId;
 
     public PackageActionReportDto(PackageActionDto action) {
-        this(action, null);
+        this(action, null, null, null);
     }
 
-    public PackageActionReportDto(PackageActionDto action, List<String> logs) {
+    public PackageActionReportDto(PackageActionDto action, List<String> logs, Long logsStart, String logId) {
         this.action = action;
         this.logs = logs;
+        this.logsStart = logsStart;
+        this.logId = logId;
     }
 
     public PackageActionDto getAction() {
@@ -23,4 +27,18 @@ public class PackageActionReportDto {
     public List<String> getLogs() {
         return logs;
     }
+
+    /**
+     * Number of first of returned log lines, equal to requested line number when only following lines are returned.
+     */
+    public Long getLogsStart() {
+        return logsStart;
+    }
+
+    /**
+     * Identity of returned log, logs following requested line number are returned only when it matches requested one.
+     */
+    public String getLogId() {
+        return logId;
+    }
 }
@@ -8,22 +8,21 @@ import org.apache.jackrabbit.vault.packaging.JcrPackage;
 import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
 import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.util.JcrConstants;
-import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.ScheduledJobInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import pl.ds.websight.packagemanager.util.JcrPackageUtil;
-import pl.ds.websight.packagemanager.util.JobUtil;
+import pl.ds.websight.packagemanager.catalog.PackageDependencyIndex;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
+import pl.ds.websight.packagemanager.rest.requestparameters.PackageField;
 
 import javax.jcr.Node;
-import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import static java.util.stream.Collectors.toList;
 
@@ -55,21 +54,26 @@ public class PackageDto {
         this.isJcrPackageValid = false;
     }
 
-    private PackageDto(JcrPackage jcrPackage) throws RepositoryException {
+    private PackageDto(JcrPackage jcrPackage, PackageMetadataReader metadata, PackageDependencyIndex dependencyIndex,
+            Set<PackageField> fields) throws RepositoryException {
         JcrPackageDefinition packageDefinition = jcrPackage.getDefinition();
         this.packageInfo = packageDefinition != null ? packageDefinition.getId() : null;
-        this.description = packageDefinition != null ? packageDefinition.getDescription() : null;
-        this.buildCount = packageDefinition != null ? packageDefinition.getBuildCount() : 0L;
-        this.modification = PackageActionInfoDto.create(packageDefinition, JcrConstants.JCR_LASTMODIFIED);
-        this.unwrap = PackageActionInfoDto.create(packageDefinition, JcrPackageDefinition.PN_LAST_UNWRAPPED);
-        this.wrap = PackageActionInfoDto.create(packageDefinition, JcrPackageDefinition.PN_LAST_WRAPPED);
+        this.description = metadata.getDescription();
+        this.buildCount = metadata.getBuildCount();
+        this.modification = metadata.getActionInfo(JcrConstants.JCR_LASTMODIFIED);
+        this.unwrap = metadata.getActionInfo(JcrPackageDefinition.PN_LAST_UNWRAPPED);
+        this.wrap = metadata.getActionInfo(JcrPackageDefinition.PN_LAST_WRAPPED);
         this.isJcrPackageValid = jcrPackage.isValid();
         this.size = jcrPackage.getSize();
-        this.requiresRestart = packageDefinition != null && packageDefinition.requiresRestart();
-        this.status = PackageStatusDto.fetchPackageStatus(jcrPackage);
+        this.requiresRestart = metadata.isRequiresRestart();
+        this.status = fields.contains(PackageField.STATUS) ? PackageStatusDto.fetchPackageStatus(jcrPackage) : null;
         this.path = "";
-        this.acHandling = packageDefinition != null ? parseAcHandling(packageDefinition.getAccessControlHandling()) : null;
-        this.dependencies = parsePackageDependencies(jcrPackage);
+        this.acHandling = fields.contains(PackageField.AC_HANDLING) ? parseAcHandling(metadata.getAcHandling()) : null;
+        this.dependencies = fields.contains(PackageField.DEPENDENCIES) ?
+                parsePackageDependencies(jcrPackage, metadata.getDependencies(), dependencyIndex) :
+                null;
+        this.filters = metadata.getFilters();
+        this.thumbnail = metadata.getThumbnail();
     }
 
     private static String parseAcHandling(AccessControlHandling acHandling) {
@@ -85,26 +89,27 @@ public class PackageDto {
         return formattedAcHandling;
     }
 
-    private static List<PackageDependencyDto> parsePackageDependencies(JcrPackage jcrPackage) throws RepositoryException {
-        JcrPackageDefinition packageDefinition = jcrPackage.getDefinition();
-        if (packageDefinition == null) {
+    // Dependencies are resolved by the package registry when there is no index
+    private static List<PackageDependencyDto> parsePackageDependencies(JcrPackage jcrPackage, List<Dependency> allDependencies,
+            PackageDependencyIndex dependencyIndex) {
+        if (allDependencies.isEmpty()) {
             return Collections.emptyList();
         }
-        Dependency[] allDependencies = packageDefinition.getDependencies();
+        Dependency[] dependencies = allDependencies.toArray(Dependency.EMPTY);
         Dependency[] unresolvedDependencies;
         try {
-            unresolvedDependencies = jcrPackage.getUnresolvedDependencies();
+            unresolvedDependencies = dependencyIndex != null ?
+                    dependencyIndex.getUnresolvedDependencies(jcrPackage, dependencies) :
+                    jcrPackage.getUnresolvedDependencies();
         } catch (RepositoryException e) {
             LOG.warn("Could not get unresolved dependencies from package", e);
-            unresolvedDependencies = allDependencies;
+            unresolvedDependencies = dependencies;
         }
         Dependency[] packageUnresolvedDependencies = unresolvedDependencies;
-        return allDependencies.length != 0 ?
-                Arrays.stream(allDependencies)
-                        .map(dependency -> new PackageDependencyDto(dependency.toString(),
-                                !ArrayUtils.contains(packageUnresolvedDependencies, dependency)))
-                        .collect(toList()) :
-                Collections.emptyList();
+        return allDependencies.stream()
+                .map(dependency -> new PackageDependencyDto(dependency.toString(),
+                        !ArrayUtils.contains(packageUnresolvedDependencies, dependency)))
+                .collect(toList());
     }
 
     public String getPath() {
@@ -191,19 +196,23 @@ public class PackageDto {
         this.nextScheduledAction = nextScheduledAction;
     }
 
-    public static PackageDto wrap(JcrPackage jcrPackage, Session session, JobManager jobManager) {
-        PackageDto packageDto = initPackageDto(jcrPackage, session);
+    public static PackageDto wrap(JcrPackage jcrPackage, Session session, PackageJobRegistry jobRegistry) {
+        PackageDto packageDto = initPackageDto(jcrPackage, null, EnumSet.allOf(PackageField.class));
         if (packageDto == null) {
             LOG.debug("Passed invalid package to output, creating placeholder");
             return createInvalidPackage(jcrPackage.getNode());
         }
-        packageDto.lastAction = PackageActionDto.forPackagePath(jobManager, session, packageDto.path);
-        packageDto.nextScheduledAction = fetchNearestScheduledAction(jobManager, packageDto.path);
+        packageDto.lastAction = PackageActionDto.forPackagePath(jobRegistry, session, packageDto.path);
+        packageDto.nextScheduledAction = fetchNearestScheduledAction(jobRegistry, packageDto.path);
         return packageDto;
     }
 
-    public static PackageDto wrapWithoutJobsData(JcrPackage jcrPackage, Session session) {
-        PackageDto packageDto = initPackageDto(jcrPackage, session);
+    /**
+     * Wraps package without its last action and next scheduled action. Optional properties not included in given fields are
+     * not read and remain {@code null}.
+     */
+    public static PackageDto wrapWithoutJobsData(JcrPackage jcrPackage, PackageDependencyIndex dependencyIndex, Set<PackageField> fields) {
+        PackageDto packageDto = initPackageDto(jcrPackage, dependencyIndex, fields);
         if (packageDto == null) {
             LOG.debug("Passed invalid package to output, creating placeholder");
             return createInvalidPackage(jcrPackage.getNode());
@@ -211,18 +220,15 @@ public class PackageDto {
         return packageDto;
     }
 
-    private static PackageDto initPackageDto(JcrPackage jcrPackage, Session session) {
+    private static PackageDto initPackageDto(JcrPackage jcrPackage, PackageDependencyIndex dependencyIndex, Set<PackageField> fields) {
         try {
-            PackageDto packageDto = new PackageDto(jcrPackage);
             Node packageNode = jcrPackage.getNode();
             if (packageNode != null) {
+                PackageMetadataReader metadata = PackageMetadataReader.read(jcrPackage.getDefNode(), fields);
+                PackageDto packageDto = new PackageDto(jcrPackage, metadata, dependencyIndex, fields);
                 packageDto.path = packageNode.getPath();
                 packageDto.parentPath = packageNode.getParent().getPath();
-                if (JcrPackageUtil.hasValidFilters(session, packageDto.path)) {
-                    packageDto.filters = fetchPackageFilters(packageDto.path, session);
-                }
-                packageDto.timestamp = fetchPackageModificationTimestamp(jcrPackage);
-                packageDto.thumbnail = PackageThumbnailDto.forPackagePath(packageDto.path, session);
+                packageDto.timestamp = fetchPackageModificationTimestamp(packageNode, metadata);
                 return packageDto;
             }
         } catch (RepositoryException e) {
@@ -231,39 +237,20 @@ public class PackageDto {
         return null;
     }
 
-    private static List<PackageFilterDto> fetchPackageFilters(String packageNodePath, Session session) throws RepositoryException {
-        String filterRootPath = packageNodePath + JcrPackageUtil.PACKAGE_FILTERS_REL_PATH;
-        NodeIterator filterNodes = session.getNode(filterRootPath).getNodes();
-        List<PackageFilterDto> packageFilters = new ArrayList<>();
-        while (filterNodes.hasNext()) {
-            PackageFilterDto packageFilter = PackageFilterDto.create(filterNodes.nextNode());
-            if (packageFilter != null) {
-                packageFilters.add(packageFilter);
-            }
-        }
-        return packageFilters;
-    }
-
-    private static PackageScheduleActionInfoDto fetchNearestScheduledAction(JobManager jobManager, String packagePath) {
-        ScheduledJobInfo nearestScheduledJobInfo = JobUtil.getNearestScheduledJob(jobManager, packagePath);
+    private static PackageScheduleActionInfoDto fetchNearestScheduledAction(PackageJobRegistry jobRegistry, String packagePath) {
+        ScheduledJobInfo nearestScheduledJobInfo = jobRegistry.getNearestScheduledJob(packagePath);
         if (nearestScheduledJobInfo != null) {
             return PackageScheduleActionInfoDto.asBasicInfo(nearestScheduledJobInfo);
         }
         return null;
     }
 
-    private static long fetchPackageModificationTimestamp(JcrPackage jcrPackage) throws RepositoryException {
-        long packageModificationTimestamp = JcrPackageUtil.fetchDefinition(jcrPackage)
-                .map(JcrPackageDefinition::getLastModified)
-                .map(Calendar::getTimeInMillis)
-                .orElse(0L);
+    private static long fetchPackageModificationTimestamp(Node packageNode, PackageMetadataReader metadata) throws RepositoryException {
+        Calendar lastModified = metadata.getDate(JcrConstants.JCR_LASTMODIFIED);
+        long packageModificationTimestamp = lastModified != null ? lastModified.getTimeInMillis() : 0L;
         if (packageModificationTimestamp != 0L) {
             return packageModificationTimestamp;
         }
-        Node packageNode = jcrPackage.getNode();
-        if (packageNode == null) {
-            return packageModificationTimestamp;
-        }
         if (packageNode.hasNode(JcrConstants.JCR_CONTENT)) {
             Node packageContentNode = packageNode.getNode(JcrConstants.JCR_CONTENT);
             if (packageContentNode.hasProperty(JcrConstants.JCR_LASTMODIFIED)) {
@@ -14,6 +14,7 @@ public class PackageListDto {
     private final long packagesLimit;
     private final String group;
     private final List<PackageDto> packages;
+    private String nextCursor;
 
     public PackageListDto(long numberOfFoundPackages, boolean limitExceeded, long numberOfPages, long pageNumber, long packagesLimit, String group,
                           List<PackageDto> packages) {
@@ -53,4 +54,12 @@ public class PackageListDto {
     public List<PackageDto> getPackages() {
         return packages;
     }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
 }
@@ -0,0 +1,187 @@
+package pl.ds.websight.packagemanager.dto;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.vault.fs.io.AccessControlHandling;
+import org.apache.jackrabbit.vault.packaging.Dependency;
+import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.requestparameters.PackageField;
+import pl.ds.websight.packagemanager.util.JcrPackageUtil;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads metadata of package shown in packages list by visiting properties and child nodes of package definition node once,
+ * instead of looking them up separately through {@link JcrPackageDefinition} and package paths.
+ */
+final class PackageMetadataReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageMetadataReader.class);
+
+    private static final String EXECUTED_BY_SUFFIX = "By";
+
+    private final boolean readFilters;
+    private final boolean readThumbnail;
+    private final Map<String, Calendar> dates = new HashMap<>();
+    private final Map<String, String> executors = new HashMap<>();
+    private final List<Dependency> dependencies = new ArrayList<>();
+    private String description;
+    private long buildCount;
+    private boolean requiresRestart;
+    private AccessControlHandling acHandling;
+    private List<PackageFilterDto> filters;
+    private PackageThumbnailDto thumbnail;
+
+    private PackageMetadataReader(Set<PackageField> fields) {
+        this.readFilters = fields.contains(PackageField.FILTERS);
+        this.readThumbnail = fields.contains(PackageField.THUMBNAIL);
+    }
+
+    static PackageMetadataReader read(Node definitionNode, Set<PackageField> fields) throws RepositoryException {
+        PackageMetadataReader reader = new PackageMetadataReader(fields);
+        if (definitionNode != null) {
+            PropertyIterator properties = definitionNode.getProperties();
+            while (properties.hasNext()) {
+                reader.readProperty(properties.nextProperty());
+            }
+            if (reader.readFilters || reader.readThumbnail) {
+                NodeIterator children = definitionNode.getNodes();
+                while (children.hasNext()) {
+                    reader.readChild(children.nextNode());
+                }
+            }
+        }
+        return reader;
+    }
+
+    private void readProperty(Property property) throws RepositoryException {
+        String name = property.getName();
+        switch (name) {
+            case JcrPackageDefinition.PN_DESCRIPTION:
+                description = property.getString();
+                break;
+            case JcrPackageDefinition.PN_BUILD_COUNT:
+                buildCount = property.getLong();
+                break;
+            case JcrPackageDefinition.PN_REQUIRES_RESTART:
+                requiresRestart = property.getBoolean();
+                break;
+            case JcrPackageDefinition.PN_AC_HANDLING:
+                acHandling = toAcHandling(property.getString());
+                break;
+            case JcrPackageDefinition.PN_DEPENDENCIES:
+                readDependencies(property);
+                break;
+            case JcrPackageDefinition.PN_CREATED:
+            case JcrPackageDefinition.PN_LASTMODIFIED:
+            case JcrPackageDefinition.PN_LAST_UNPACKED:
+            case JcrPackageDefinition.PN_LAST_UNWRAPPED:
+            case JcrPackageDefinition.PN_LAST_WRAPPED:
+                dates.put(name, property.getDate());
+                break;
+            case JcrPackageDefinition.PN_CREATED_BY:
+            case JcrPackageDefinition.PN_LASTMODIFIED_BY:
+            case JcrPackageDefinition.PN_LAST_UNPACKED_BY:
+            case JcrPackageDefinition.PN_LAST_UNWRAPPED_BY:
+            case JcrPackageDefinition.PN_LAST_WRAPPED_BY:
+                executors.put(StringUtils.removeEnd(name, EXECUTED_BY_SUFFIX), property.getString());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void readDependencies(Property property) throws RepositoryException {
+        Value[] values = property.isMultiple() ? property.getValues() : new Value[]{ property.getValue() };
+        for (Value value : values) {
+            Dependency dependency = Dependency.fromString(value.getString());
+            if (dependency != null) {
+                dependencies.add(dependency);
+            }
+        }
+    }
+
+    private void readChild(Node child) throws RepositoryException {
+        String name = child.getName();
+        if (readFilters && JcrPackageDefinition.NN_FILTER.equals(name)) {
+            filters = readFilters(child);
+        } else if (readThumbnail && JcrPackageUtil.NN_PACKAGE_THUMBNAIL.equals(name)) {
+            thumbnail = PackageThumbnailDto.forThumbnailNode(child);
+        }
+    }
+
+    // Filters are listed only when all of them are valid
+    private static List<PackageFilterDto> readFilters(Node filtersNode) throws RepositoryException {
+        List<PackageFilterDto> packageFilters = new ArrayList<>();
+        NodeIterator filterNodes = filtersNode.getNodes();
+        while (filterNodes.hasNext()) {
+            Node filterNode = filterNodes.nextNode();
+            if (!(filterNode.hasProperty(JcrPackageDefinition.PN_ROOT) && filterNode.hasProperty(JcrPackageDefinition.PN_MODE))) {
+                return null;
+            }
+            PackageFilterDto packageFilter = PackageFilterDto.create(filterNode);
+            if (packageFilter != null) {
+                packageFilters.add(packageFilter);
+            }
+        }
+        return !packageFilters.isEmpty() ? packageFilters : null;
+    }
+
+    private static AccessControlHandling toAcHandling(String acHandlingName) {
+        try {
+            return AccessControlHandling.valueOf(acHandlingName.toUpperCase(JcrPackageUtil.DEFAULT_LOCALE));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Invalid access control handling in package definition: {}", acHandlingName);
+            return null;
+        }
+    }
+
+    String getDescription() {
+        return description;
+    }
+
+    long getBuildCount() {
+        return buildCount;
+    }
+
+    boolean isRequiresRestart() {
+        return requiresRestart;
+    }
+
+    AccessControlHandling getAcHandling() {
+        return acHandling;
+    }
+
+    List<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    List<PackageFilterDto> getFilters() {
+        return filters;
+    }
+
+    PackageThumbnailDto getThumbnail() {
+        return thumbnail;
+    }
+
+    Calendar getDate(String actionPropName) {
+        return dates.get(actionPropName);
+    }
+
+    PackageActionInfoDto getActionInfo(String actionPropName) {
+        return PackageActionInfoDto.create(dates.get(actionPropName), executors.get(actionPropName));
+    }
+
+}
@@ -3,11 +3,9 @@ package pl.ds.websight.packagemanager.dto;
 import org.apache.jackrabbit.vault.util.JcrConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import pl.ds.websight.packagemanager.util.JcrPackageUtil;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
-import javax.jcr.Session;
 import javax.jcr.nodetype.NodeType;
 import java.util.Calendar;
 
@@ -25,13 +23,8 @@ public class PackageThumbnailDto {
         this.timestamp = timestamp;
     }
 
-    public static PackageThumbnailDto forPackagePath(String packagePath, Session session) {
+    static PackageThumbnailDto forThumbnailNode(Node packageThumbnailNode) {
         try {
-            String packageThumbnailPath = packagePath + JcrPackageUtil.THUMBNAIL_REL_PATH;
-            if (!session.nodeExists(packageThumbnailPath)) {
-                return null;
-            }
-            Node packageThumbnailNode = session.getNode(packageThumbnailPath);
             if (!packageThumbnailNode.hasNode(JcrConstants.JCR_CONTENT)) {
                 return null;
             }
@@ -42,7 +35,7 @@ public class PackageThumbnailDto {
             Calendar lastModificationDate = thumbnailContentNode.hasProperty(JcrConstants.JCR_LASTMODIFIED) ?
                     thumbnailContentNode.getProperty(JcrConstants.JCR_LASTMODIFIED).getDate() : null;
             return lastModificationDate != null ?
-                    new PackageThumbnailDto(packageThumbnailPath, lastModificationDate.getTimeInMillis()) :
+                    new PackageThumbnailDto(packageThumbnailNode.getPath(), lastModificationDate.getTimeInMillis()) :
                     null;
         } catch (RepositoryException e) {
             LOG.warn("Could not check package thumbnail", e);
@@ -0,0 +1,203 @@
+package pl.ds.websight.packagemanager.packageaction;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps paths which could overlay paths processed by package action in a trie of path segments, so overlays are detected without
+ * reading resources. Subtrees of overlay search paths, which names are found in overlaid search paths, are indexed when action
+ * starts, paths added and deleted by action are indexed as they are processed. Other existing subtrees are checked by resolver,
+ * their missing paths are cached.
+ */
+final class OverlayPathIndex {
+
+    private static final int MAX_VISITED_PATHS = 100000;
+    private static final int MAX_CACHED_MISSES = 10000;
+
+    private final ResourceResolver resolver;
+    private final String[] overlayPathPrefixes;
+    private final PathNode root = new PathNode();
+    private final Set<String> existingSubtrees = new HashSet<>();
+    private final Set<String> indexedSubtrees = new HashSet<>();
+    private final Map<String, Boolean> cachedMisses = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_CACHED_MISSES;
+        }
+    };
+
+    private int visitedPaths;
+
+    /**
+     * Creates index of paths starting with overlay prefixes, search path prefixes are ordered from the lowest priority.
+     */
+    OverlayPathIndex(ResourceResolver resolver, String[] searchPathPrefixes) {
+        this.resolver = resolver;
+        this.overlayPathPrefixes = new String[searchPathPrefixes.length - 1];
+        System.arraycopy(searchPathPrefixes, 1, overlayPathPrefixes, 0, overlayPathPrefixes.length);
+        for (int i = 1; i < searchPathPrefixes.length; i++) {
+            Resource overlayRoot = resolver.getResource(searchPathPrefixes[i].substring(0, searchPathPrefixes[i].length() - 1));
+            if (overlayRoot != null) {
+                for (Resource subtree : overlayRoot.getChildren()) {
+                    existingSubtrees.add(subtree.getPath());
+                    if (visitedPaths < MAX_VISITED_PATHS && isMirrored(subtree.getName(), searchPathPrefixes, i)) {
+                        indexSubtree(subtree);
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean isMirrored(String subtreeName, String[] searchPathPrefixes, int overlayPrefixIndex) {
+        for (int i = 0; i < overlayPrefixIndex; i++) {
+            if (resolver.getResource(searchPathPrefixes[i] + subtreeName) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Every visited resource counts against single budget, subtrees not visited entirely within it are not indexed at all, so
+    // they are checked by resolver
+    private void indexSubtree(Resource subtree) {
+        List<String> paths = new ArrayList<>();
+        if (collectPaths(subtree, paths)) {
+            paths.forEach(this::put);
+            indexedSubtrees.add(subtree.getPath());
+        }
+    }
+
+    private boolean collectPaths(Resource resource, List<String> paths) {
+        if (visitedPaths >= MAX_VISITED_PATHS) {
+            return false;
+        }
+        visitedPaths++;
+        paths.add(resource.getPath());
+        for (Resource child : resource.getChildren()) {
+            if (!collectPaths(child, paths)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean exists(String path) {
+        if (contains(path)) {
+            return true;
+        }
+        String subtreePath = getSubtreePath(path);
+        if (subtreePath == null || indexedSubtrees.contains(subtreePath) || !existingSubtrees.contains(subtreePath)) {
+            // Whole subtree is indexed, or it did not exist when action started and its paths are indexed as they are added
+            return false;
+        }
+        if (cachedMisses.containsKey(path)) {
+            return false;
+        }
+        if (resolver.getResource(path) != null) {
+            put(path);
+            return true;
+        }
+        cachedMisses.put(path, Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * Updates index with path processed by package action.
+     */
+    void update(String action, String path) {
+        if (getSubtreePath(path) == null) {
+            return;
+        }
+        if ("D".equals(action)) {
+            remove(path);
+            cachedMisses.put(path, Boolean.TRUE);
+        } else if ("A".equals(action) || "U".equals(action)) {
+            put(path);
+            cachedMisses.remove(path);
+        }
+    }
+
+    private String getSubtreePath(String path) {
+        for (String overlayPathPrefix : overlayPathPrefixes) {
+            if (path.startsWith(overlayPathPrefix) && path.length() > overlayPathPrefix.length()) {
+                int subtreeEnd = path.indexOf('/', overlayPathPrefix.length());
+                return subtreeEnd != -1 ? path.substring(0, subtreeEnd) : path;
+            }
+        }
+        return null;
+    }
+
+    private boolean contains(String path) {
+        PathNode node = root;
+        int segmentStart = 1;
+        while (node != null && segmentStart < path.length()) {
+            int segmentEnd = getSegmentEnd(path, segmentStart);
+            node = node.getChild(path.substring(segmentStart, segmentEnd));
+            segmentStart = segmentEnd + 1;
+        }
+        return node != null;
+    }
+
+    private void put(String path) {
+        PathNode node = root;
+        int segmentStart = 1;
+        while (segmentStart < path.length()) {
+            int segmentEnd = getSegmentEnd(path, segmentStart);
+            node = node.getOrCreateChild(path.substring(segmentStart, segmentEnd));
+            segmentStart = segmentEnd + 1;
+        }
+    }
+
+    private void remove(String path) {
+        PathNode parent = null;
+        PathNode node = root;
+        String segment = null;
+        int segmentStart = 1;
+        while (node != null && segmentStart < path.length()) {
+            int segmentEnd = getSegmentEnd(path, segmentStart);
+            segment = path.substring(segmentStart, segmentEnd);
+            parent = node;
+            node = node.getChild(segment);
+            segmentStart = segmentEnd + 1;
+        }
+        if (node != null && parent != null) {
+            parent.removeChild(segment);
+        }
+    }
+
+    private static int getSegmentEnd(String path, int segmentStart) {
+        int segmentEnd = path.indexOf('/', segmentStart);
+        return segmentEnd != -1 ? segmentEnd : path.length();
+    }
+
+    private static final class PathNode {
+
+        private Map<String, PathNode> children;
+
+        private PathNode getChild(String name) {
+            return children != null ? children.get(name) : null;
+        }
+
+        private PathNode getOrCreateChild(String name) {
+            if (children == null) {
+                children = new HashMap<>(4);
+            }
+            return children.computeIfAbsent(name, childName -> new PathNode());
+        }
+
+        private void removeChild(String name) {
+            if (children != null) {
+                children.remove(name);
+            }
+        }
+    }
+
+}
@@ -58,6 +58,12 @@ public class PackageActionJobConsumer implements JobConsumer {
     @Reference
     private DynamicClassLoaderManager classLoaderManager;
 
+    @Reference
+    private PackageActionLogFeed logFeed;
+
+    @Reference
+    private PackageActionLogSink logSink;
+
     @Override
     public JobResult process(Job job) {
         PackageActionJobProperties properties = PackageActionJobProperties.fetch(job);
@@ -70,8 +76,9 @@ public class PackageActionJobConsumer implements JobConsumer {
         String packageReference = properties.getPackageReference();
         LOG.debug("Acquired action job properties for package: {} and user: {}, starting processing action pre operations",
                 packageReference, applicantId);
+        PackageActionLogFeed.LiveLog liveLog = logFeed.open(packageReference, job.getId());
         PackageActionJobFinishedHandler actionFinishedHandler =
-                new PackageActionJobFinishedHandler(resolverFactory, properties, job.getId(), command);
+                new PackageActionJobFinishedHandler(resolverFactory, properties, job.getId(), command, liveLog);
         try (ResourceResolver applicantResolver = JobUtil.getImpersonatedResolver(resolverFactory, applicantId)) {
             if (applicantResolver == null) {
                 LOG.warn("Failed to use impersonated resource resolver for applicant: {}", applicantId);
@@ -98,9 +105,20 @@ public class PackageActionJobConsumer implements JobConsumer {
                 return JobResult.FAILED;
             }
             PackageLogUtil.updateActionInfo(command.toString(), applicantId, logValueMap);
+            // Log node is committed before action starts, its lines are written by log sink using separate resolver
+            applicantResolver.commit();
             LOG.debug("Processed all action pre operations for package: {}, starting action: {}", packageReference, command);
-            PackageActionLogProgressListener progressListener = new PackageActionLogProgressListener(logValueMap, applicantResolver,
-                    resolverFactory.getSearchPath(), job.getId());
+            PackageActionLogSink.LogStream logStream = logSink.open(logNodePath, applicantId, job.getId());
+            actionFinishedHandler.setLogStream(logStream);
+            PackageActionLogProgressListener progressListener;
+            try {
+                progressListener = new PackageActionLogProgressListener(logStream, applicantResolver, resolverFactory.getSearchPath(),
+                        liveLog);
+            } catch (RuntimeException e) {
+                // Stream is already opened, so writer thread would keep it until log sink is deactivated
+                logStream.close();
+                throw e;
+            }
             return processPackageAction(actionFinishedHandler, properties, job.getProcessingStarted(), progressListener, applicantSession,
                     command);
         } catch (Exception e) {
@@ -1,43 +1,51 @@
 package pl.ds.websight.packagemanager.packageaction;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
-import org.apache.sling.api.resource.ValueMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.ds.websight.packagemanager.rest.requestparameters.PackageActionCommand;
 import pl.ds.websight.packagemanager.util.JobUtil;
 import pl.ds.websight.packagemanager.util.PackageLogUtil;
 
-import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 
-import static java.util.stream.Collectors.toList;
-import static pl.ds.websight.packagemanager.util.PackageLogUtil.MAX_ENTRY_CAPACITY;
-import static pl.ds.websight.packagemanager.util.PackageLogUtil.PN_FIRST_LOG_ENTRY;
 import static pl.ds.websight.packagemanager.util.PackageLogUtil.PN_LOG_AUTHOR_SIGN;
-import static pl.ds.websight.packagemanager.util.PackageLogUtil.PN_LOG_ENTRY_PREFIX;
 
 public final class PackageActionJobFinishedHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(PackageActionJobFinishedHandler.class);
 
+    private static final String LOG_TRUNCATED_MESSAGE = "... log was truncated, because some of its lines could not be persisted";
+
     private final ResourceResolverFactory resolverFactory;
     private final PackageActionJobProperties properties;
     private final String jobId;
     private final String actionType;
+    private final long started;
+    private final PackageActionLogFeed.LiveLog liveLog;
+
+    private PackageActionLogSink.LogStream logStream;
 
     public PackageActionJobFinishedHandler(ResourceResolverFactory resolverFactory, PackageActionJobProperties properties, String jobId,
-            PackageActionCommand packageActionCommand) {
+            PackageActionCommand packageActionCommand, PackageActionLogFeed.LiveLog liveLog) {
         this.resolverFactory = resolverFactory;
         this.properties = properties;
         this.jobId = jobId;
         this.actionType = packageActionCommand.toString();
+        this.started = System.currentTimeMillis();
+        this.liveLog = liveLog;
+    }
+
+    /**
+     * Sets stream of log lines, which are persisted before footer of log is written.
+     */
+    public void setLogStream(PackageActionLogSink.LogStream logStream) {
+        this.logStream = logStream;
     }
 
     public void handleFinish(String finishMessage) {
@@ -45,6 +53,20 @@ public final class PackageActionJobFinishedHandler {
     }
 
     public void handleFinish(String finishMessage, String exceptionStacktrace) {
+        try {
+            saveFinish(finishMessage, exceptionStacktrace);
+        } finally {
+            liveLog.close();
+        }
+    }
+
+    private void saveFinish(String finishMessage, String exceptionStacktrace) {
+        // Writer thread of log sink must not change the log while its footer is written
+        boolean logTruncated = false;
+        if (logStream != null) {
+            logStream.close();
+            logTruncated = logStream.isTruncated();
+        }
         String applicantId = properties.getApplicantId();
         try (ResourceResolver applicantResolver = JobUtil.getImpersonatedResolver(resolverFactory, applicantId)) {
             ModifiableValueMap logValueMap = Optional.ofNullable(applicantResolver)
@@ -56,22 +78,36 @@ public final class PackageActionJobFinishedHandler {
                 return;
             }
             PackageLogUtil.updateActionInfo(actionType, applicantId, logValueMap);
-            List<String> footerEntries = getFooterEntries(finishMessage, exceptionStacktrace);
+            List<String> footerEntries = getFooterEntries(finishMessage, exceptionStacktrace, logTruncated);
+            liveLog.append(footerEntries);
+            PackageActionLogWriter logWriter;
             if (exceptionStacktrace != null && PackageLogUtil.isLogsAuthorDifferent(jobId, logValueMap)) {
-                removeAllLogs(logValueMap);
+                logWriter = PackageActionLogWriter.create(logValueMap);
                 logValueMap.put(PN_LOG_AUTHOR_SIGN, jobId);
-                saveCompletedLogs(logValueMap, PN_FIRST_LOG_ENTRY, footerEntries);
             } else {
-                appendPackageLogFooter(logValueMap, footerEntries);
+                logWriter = PackageActionLogWriter.resume(logValueMap);
             }
+            logWriter.append(footerEntries);
+            logWriter.flush();
+            saveSummary(logValueMap, exceptionStacktrace != null);
             applicantResolver.commit();
         } catch (PersistenceException e) {
             LOG.warn("Could not insert finish info", e);
         }
     }
 
-    private static List<String> getFooterEntries(String finishMessage, String stacktrace) {
+    private void saveSummary(ModifiableValueMap logValueMap, boolean failed) {
+        long finished = System.currentTimeMillis();
+        new PackageActionSummary(actionType, properties.getApplicantId(),
+                failed ? PackageActionSummary.Result.FAILED : PackageActionSummary.Result.SUCCEEDED, finished - started, finished)
+                .save(logValueMap);
+    }
+
+    private static List<String> getFooterEntries(String finishMessage, String stacktrace, boolean logTruncated) {
         List<String> entries = new LinkedList<>();
+        if (logTruncated) {
+            entries.add(LOG_TRUNCATED_MESSAGE);
+        }
         List<String> stacktraceList = PackageLogUtil.splitLogEntry(stacktrace);
         if (stacktraceList != null) {
             entries.addAll(stacktraceList);
@@ -81,50 +117,4 @@ public final class PackageActionJobFinishedHandler {
         return entries;
     }
 
-    private static void removeAllLogs(ValueMap valueMap) {
-        valueMap.keySet().stream()
-                .filter(PackageLogUtil::isLogEntry)
-                .collect(toList())
-                .forEach(valueMap::remove);
-    }
-
-    private static void appendPackageLogFooter(ModifiableValueMap logValueMap, List<String> footerEntries) {
-        String lastLogEntryName = getLastLogEntryName(logValueMap);
-        if (lastLogEntryName == null) {
-            LOG.warn("No log has been specified, skipped finish info addition");
-            return;
-        }
-        List<String> lastLogEntries = PackageLogUtil.getLogEntry(logValueMap, lastLogEntryName);
-        if (lastLogEntries != null) {
-            lastLogEntries.addAll(footerEntries);
-            saveCompletedLogs(logValueMap, lastLogEntryName, lastLogEntries);
-        }
-    }
-
-    private static String getLastLogEntryName(ValueMap valueMap) {
-        return valueMap.keySet().stream()
-                .filter(PackageLogUtil::isLogEntry)
-                .max(Comparator.comparing(logProp -> {
-                    String range = logProp.substring(PN_LOG_ENTRY_PREFIX.length());
-                    return PackageLogUtil.getRangeLimits(range).getLeft();
-                }))
-                .orElse(null);
-    }
-
-    private static void saveCompletedLogs(ModifiableValueMap logValueMap, String lastLogEntryName, List<String> updatedLogs) {
-        String range = PackageLogUtil.removeLogEntryNamePrefix(lastLogEntryName);
-        while (updatedLogs.size() >= MAX_ENTRY_CAPACITY) {
-            List<String> fullEntry = updatedLogs.subList(0, MAX_ENTRY_CAPACITY);
-            PackageLogUtil.putLog(logValueMap, range, fullEntry);
-            range = PackageLogUtil.increaseRange(range);
-            updatedLogs.removeAll(fullEntry);
-        }
-        PackageLogUtil.putLog(logValueMap, range, updatedLogs);
-        deleteLastCarriageReturn(logValueMap, range);
-    }
-
-    private static void deleteLastCarriageReturn(ModifiableValueMap logValueMap, String range) {
-        String lastLineWithoutCarriageReturn = StringUtils.removeEnd(logValueMap.get(PN_LOG_ENTRY_PREFIX + range, String.class), "\n");
-        logValueMap.put(PN_LOG_ENTRY_PREFIX + range, lastLineWithoutCarriageReturn);
-    }
 }
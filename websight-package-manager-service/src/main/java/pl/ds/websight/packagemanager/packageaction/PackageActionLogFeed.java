@@ -0,0 +1,155 @@
+package pl.ds.websight.packagemanager.packageaction;
+
+import org.apache.commons.lang3.StringUtils;
+import org.osgi.service.component.annotations.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static pl.ds.websight.packagemanager.util.PackageLogUtil.MAX_ENTRY_CAPACITY;
+
+/**
+ * Keeps last lines of logs of package actions running on this instance in memory, so they are pushed to clients as they are
+ * produced, instead of being read again from the repository. Only as many lines as shown in log tail are kept for every action.
+ */
+@Component(service = PackageActionLogFeed.class)
+public class PackageActionLogFeed {
+
+    private final Map<String, LiveLog> liveLogs = new ConcurrentHashMap<>();
+
+    /**
+     * Opens live log of action of package identified by job id, live log of previous action of the same package is closed.
+     */
+    public LiveLog open(String packagePath, String jobId) {
+        LiveLog liveLog = new LiveLog(packagePath, jobId);
+        LiveLog previousLiveLog = liveLogs.put(packagePath, liveLog);
+        if (previousLiveLog != null) {
+            previousLiveLog.close();
+        }
+        return liveLog;
+    }
+
+    public LiveLog get(String packagePath) {
+        return liveLogs.get(packagePath);
+    }
+
+    public final class LiveLog {
+
+        private final String packagePath;
+        private final String logId;
+        private final String[] buffer = new String[MAX_ENTRY_CAPACITY];
+
+        private long appended;
+        private boolean closed;
+
+        private LiveLog(String packagePath, String logId) {
+            this.packagePath = packagePath;
+            this.logId = logId;
+        }
+
+        /**
+         * Identity of log, equal to identity of log stored by the same action.
+         */
+        public String getLogId() {
+            return logId;
+        }
+
+        public synchronized void append(List<String> lines) {
+            if (closed || lines.isEmpty()) {
+                return;
+            }
+            for (String line : lines) {
+                buffer[(int) (appended % buffer.length)] = line;
+                appended++;
+            }
+            notifyAll();
+        }
+
+        public synchronized void append(String line) {
+            if (closed) {
+                return;
+            }
+            buffer[(int) (appended % buffer.length)] = line;
+            appended++;
+            notifyAll();
+        }
+
+        /**
+         * Closes live log, lines appended before are still read by subscribed clients.
+         */
+        public void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            liveLogs.remove(packagePath, this);
+        }
+
+        /**
+         * Reads lines starting from given line number, waiting up to given time for lines to be appended. Lines which are not
+         * kept anymore are skipped.
+         */
+        public synchronized Lines read(long from, long timeoutMillis) throws InterruptedException {
+            long waitEnd = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            while (from >= appended && !closed && remaining > 0) {
+                wait(remaining);
+                remaining = waitEnd - System.currentTimeMillis();
+            }
+            long first = Math.max(from, appended - buffer.length);
+            if (first >= appended) {
+                return new Lines(Collections.emptyList(), appended, false, closed);
+            }
+            List<String> lines = new ArrayList<>((int) (appended - first));
+            for (long lineNumber = first; lineNumber < appended; lineNumber++) {
+                // Lines are ended the same way as stored ones, so they are displayed the same way as log tail
+                lines.add(StringUtils.appendIfMissing(buffer[(int) (lineNumber % buffer.length)], "\n"));
+            }
+            return new Lines(lines, appended, first > from, closed);
+        }
+    }
+
+    public static final class Lines {
+
+        private final List<String> entries;
+        private final long next;
+        private final boolean skipped;
+        private final boolean closed;
+
+        private Lines(List<String> entries, long next, boolean skipped, boolean closed) {
+            this.entries = entries;
+            this.next = next;
+            this.skipped = skipped;
+            this.closed = closed;
+        }
+
+        public List<String> getEntries() {
+            return entries;
+        }
+
+        /**
+         * Number of line following read lines.
+         */
+        public long getNext() {
+            return next;
+        }
+
+        /**
+         * Whether lines preceding read lines were skipped, because they were not kept anymore.
+         */
+        public boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Whether live log was closed, so no more lines will be appended.
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+
+}
@@ -3,52 +3,43 @@ package pl.ds.websight.packagemanager.packageaction;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.vault.fs.api.ProgressTrackerListener;
-import org.apache.sling.api.resource.ModifiableValueMap;
-import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.ResourceResolver;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import pl.ds.websight.packagemanager.util.PackageLogUtil;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
-
-import static org.apache.commons.lang3.time.DateUtils.MILLIS_PER_SECOND;
-import static pl.ds.websight.packagemanager.util.PackageLogUtil.MAX_ENTRY_CAPACITY;
-import static pl.ds.websight.packagemanager.util.PackageLogUtil.PN_LOG_AUTHOR_SIGN;
-import static pl.ds.websight.packagemanager.util.PackageLogUtil.increaseRange;
 
 public class PackageActionLogProgressListener implements ProgressTrackerListener {
 
-    private static final Logger LOG = LoggerFactory.getLogger(PackageActionLogProgressListener.class);
+    private static final String OVERLAY_MESSAGE_PREFIX = "Potential ResourceResolver overlay found: ";
+    private static final String OVERLAY_MESSAGE_INFIX = " for processed path: ";
+
+    private final PackageActionLogSink.LogStream logStream;
+    private final PackageActionLogFeed.LiveLog liveLog;
 
-    private final ModifiableValueMap logValueMap;
-    private final ResourceResolver resolver;
-    private final List<String> entries = new ArrayList<>();
-    private final String jobId;
+    // Reused for every message, only listener's thread appends lines
+    private final StringBuilder line = new StringBuilder(256);
 
-    private String[] searchPathPrefixes;
     private String[] overlayablePathPrefixes;
-    private long lastCommitTimeInMillis = 0L;
-    private String range = "0-" + MAX_ENTRY_CAPACITY;
-    private boolean signedByJob;
+    private String[][] overlayPathPrefixes;
+    private OverlayPathIndex overlayPathIndex;
 
-    public PackageActionLogProgressListener(ModifiableValueMap logValueMap, ResourceResolver resolver, List<String> resolverSearchPaths,
-            String jobId) {
-        this.logValueMap = logValueMap;
-        this.resolver = resolver;
-        this.jobId = jobId;
+    public PackageActionLogProgressListener(PackageActionLogSink.LogStream logStream, ResourceResolver resolver,
+            List<String> resolverSearchPaths, PackageActionLogFeed.LiveLog liveLog) {
+        this.logStream = logStream;
+        this.liveLog = liveLog;
         if (isOverlayPossible(resolverSearchPaths)) {
-            this.searchPathPrefixes = resolverSearchPaths.stream()
+            String[] searchPathPrefixes = resolverSearchPaths.stream()
                     .map(path -> StringUtils.appendIfMissing(path, "/"))
                     .distinct()
                     .toArray(String[]::new);
             ArrayUtils.reverse(searchPathPrefixes);
-            this.overlayablePathPrefixes = ArrayUtils.remove(searchPathPrefixes, searchPathPrefixes.length - 1);// because the last one
-            // could not be overlaid by any path
+            // the last one could not be overlaid by any path:
+            this.overlayablePathPrefixes = ArrayUtils.remove(searchPathPrefixes, searchPathPrefixes.length - 1);
+            // prefixes of paths which could overlay paths starting with overlayable prefix of the same index:
+            this.overlayPathPrefixes = new String[overlayablePathPrefixes.length][];
+            for (int i = 0; i < overlayablePathPrefixes.length; i++) {
+                overlayPathPrefixes[i] = ArrayUtils.subarray(searchPathPrefixes, i + 1, searchPathPrefixes.length);
+            }
+            this.overlayPathIndex = new OverlayPathIndex(resolver, searchPathPrefixes);
         }
     }
 
@@ -58,38 +49,38 @@ public class PackageActionLogProgressListener implements ProgressTrackerListener
 
     @Override
     public void onMessage(Mode mode, String action, String path) {
-        processLog(getInfoLogMessages(action, path));
-    }
-
-    private List<String> getInfoLogMessages(String action, String path) {
         if (StringUtils.isBlank(path)) {
-            return Collections.singletonList(action);
+            processLog(action);
+            return;
         }
-        List<String> logMessages = new ArrayList<>();
-        logMessages.add(String.format("%s %s", action, path));
-        if (searchPathPrefixes != null && overlayablePathPrefixes.length > 0) {
-            validateOverlay(path, logMessages);
+        line.setLength(0);
+        processLog(line.append(action).append(' ').append(path).toString());
+        if (overlayablePathPrefixes != null) {
+            overlayPathIndex.update(action, path);
+            validateOverlay(path);
         }
-        return logMessages;
     }
 
-    private void validateOverlay(String path, List<String> logMessages) {
-        Arrays.stream(overlayablePathPrefixes)
-                .filter(path::startsWith)
-                .map(overlayablePathCandidate -> detectOverlay(overlayablePathCandidate, path, searchPathPrefixes, resolver))
-                .filter(Objects::nonNull)
-                .findFirst()
-                .ifPresent(overlayPath ->
-                        logMessages.add("Potential ResourceResolver overlay found: " + overlayPath + " for processed path: " + path));
+    private void validateOverlay(String path) {
+        for (int i = 0; i < overlayablePathPrefixes.length; i++) {
+            if (path.startsWith(overlayablePathPrefixes[i])) {
+                String overlayPath = detectOverlay(overlayablePathPrefixes[i].length(), path, overlayPathPrefixes[i]);
+                if (overlayPath != null) {
+                    line.setLength(0);
+                    processLog(line.append(OVERLAY_MESSAGE_PREFIX).append(overlayPath).append(OVERLAY_MESSAGE_INFIX).append(path)
+                            .toString());
+                    return;
+                }
+            }
+        }
     }
 
-    private static String detectOverlay(String overlayPathPrefix, String sourcePath, String[] searchPathPrefixes,
-            ResourceResolver resolver) {
-        String[] possibleOverlays = ArrayUtils.subarray(searchPathPrefixes, ArrayUtils.indexOf(searchPathPrefixes, overlayPathPrefix) + 1,
-                searchPathPrefixes.length);
+    private String detectOverlay(int overlayablePathPrefixLength, String sourcePath, String[] possibleOverlays) {
         for (String possibleOverlay : possibleOverlays) {
-            String possibleOverlayPath = possibleOverlay + sourcePath.substring(overlayPathPrefix.length());
-            if (resolver.getResource(possibleOverlayPath) != null) {
+            line.setLength(0);
+            String possibleOverlayPath = line.append(possibleOverlay).append(sourcePath, overlayablePathPrefixLength, sourcePath.length())
+                    .toString();
+            if (overlayPathIndex.exists(possibleOverlayPath)) {
                 return possibleOverlayPath;
             }
         }
@@ -98,44 +89,20 @@ public class PackageActionLogProgressListener implements ProgressTrackerListener
 
     @Override
     public void onError(Mode mode, String path, Exception e) {
-        processLog(Collections.singletonList(String.format("E %s (%s)", path, e)));
+        line.setLength(0);
+        processLog(line.append("E ").append(path).append(" (").append(e).append(')').toString());
     }
 
-    private void processLog(List<String> logMessages) {
-        entries.addAll(logMessages);
-        long lastChangeTimeInMillis = System.currentTimeMillis();
-        if (Math.abs(lastChangeTimeInMillis - lastCommitTimeInMillis) > MILLIS_PER_SECOND) {
-            lastCommitTimeInMillis = lastChangeTimeInMillis;
-            commitLog();
-        }
+    // Lines are persisted by log sink, so processing of package is not held by log commits
+    private void processLog(String logMessage) {
+        logStream.append(logMessage);
+        liveLog.append(logMessage);
     }
 
+    /**
+     * Waits until all lines are persisted, called when action is finished.
+     */
     public void flushUnsavedData() {
-        if (!entries.isEmpty()) {
-            commitLog();
-        }
-    }
-
-    private void commitLog() {
-        signLogs();
-        while (entries.size() >= MAX_ENTRY_CAPACITY) {
-            List<String> fullEntry = entries.subList(0, MAX_ENTRY_CAPACITY);
-            PackageLogUtil.putLog(logValueMap, range, fullEntry);
-            range = increaseRange(range);
-            entries.removeAll(fullEntry);
-        }
-        PackageLogUtil.putLog(logValueMap, range, entries);
-        try {
-            resolver.commit();
-        } catch (PersistenceException e) {
-            LOG.warn("Could not update logs during package action", e);
-        }
-    }
-
-    private void signLogs() {
-        if (!signedByJob) {
-            logValueMap.put(PN_LOG_AUTHOR_SIGN, jobId);
-            signedByJob = true;
-        }
+        logStream.close();
     }
 }
@@ -0,0 +1,356 @@
+package pl.ds.websight.packagemanager.packageaction;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.util.JobUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static pl.ds.websight.packagemanager.util.PackageLogUtil.PN_LOG_AUTHOR_SIGN;
+
+/**
+ * Persists logs of package actions on dedicated writer thread, so threads performing actions only put lines into buffers.
+ * Writer uses its own resolver for every log, so log writes are not mixed with changes made by actions. Lines of all logs are
+ * committed in batches, once per flush interval or earlier, when buffer of log is half full. Lines of failed commit are written
+ * again with the next batch, until commit fails {@link #MAX_COMMIT_ATTEMPTS} times. Threads performing actions wait for writer
+ * when buffers are full, unless dropping lines is configured.
+ */
+@Component(service = PackageActionLogSink.class)
+@Designate(ocd = PackageActionLogSink.Config.class)
+public class PackageActionLogSink {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageActionLogSink.class);
+
+    private static final long FULL_BUFFER_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1L);
+    private static final int MAX_COMMIT_ATTEMPTS = 3;
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    private final Queue<LogStream> streams = new ConcurrentLinkedQueue<>();
+
+    private int bufferCapacity;
+    private long flushIntervalNanos;
+    private long closeTimeout;
+    private boolean dropOnOverflow;
+    private boolean gzipChunks;
+
+    private volatile boolean running;
+    private Thread writerThread;
+
+    /**
+     * Opens stream of lines appended to log, which node already exists.
+     */
+    public LogStream open(String logPath, String applicantId, String jobId) {
+        LogStream stream = new LogStream(logPath, applicantId, jobId);
+        streams.add(stream);
+        return stream;
+    }
+
+    private void writeLogs() {
+        try {
+            while (running) {
+                for (LogStream stream : streams) {
+                    if (write(stream)) {
+                        streams.remove(stream);
+                    }
+                }
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            // Lines appended later are dropped, so threads performing actions stop waiting for writer
+            for (LogStream stream : streams) {
+                write(stream);
+                stream.finish();
+            }
+            streams.clear();
+        } finally {
+            // Writer thread is the only one persisting lines, threads performing actions must not wait for it when it dies
+            running = false;
+            streams.forEach(LogStream::finish);
+        }
+    }
+
+    // Stream failing unexpectedly is finished, so it does not stop writer thread persisting other logs
+    private static boolean write(LogStream stream) {
+        try {
+            return stream.write();
+        } catch (RuntimeException e) {
+            LOG.warn("Could not persist lines of log {}, its lines are dropped", stream.logPath, e);
+            stream.finish();
+            return true;
+        }
+    }
+
+    private void wakeWriter() {
+        LockSupport.unpark(writerThread);
+    }
+
+    @Activate
+    private void activate(Config config) {
+        bufferCapacity = Math.max(1, config.buffer_capacity());
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, config.flush_interval()));
+        closeTimeout = TimeUnit.SECONDS.toMillis(Math.max(0L, config.close_timeout()));
+        dropOnOverflow = config.drop_on_overflow();
+        gzipChunks = config.gzip_chunks();
+        running = true;
+        writerThread = new Thread(this::writeLogs, "websight-package-manager-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    @Deactivate
+    private void deactivate() throws InterruptedException {
+        running = false;
+        wakeWriter();
+        writerThread.join(closeTimeout);
+    }
+
+    /**
+     * Lines of single log, appended by one thread performing action and read by writer thread. Lines are kept in bounded ring
+     * buffer, which needs no locks, because each of its positions is changed only by one of these threads.
+     */
+    public final class LogStream {
+
+        private final String logPath;
+        private final String applicantId;
+        private final String jobId;
+        private final AtomicReferenceArray<String> buffer = new AtomicReferenceArray<>(bufferCapacity);
+        private final AtomicLong head = new AtomicLong();
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong droppedLines = new AtomicLong();
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private volatile boolean closed;
+        private volatile boolean abandoned;
+        private volatile boolean truncated;
+
+        // Accessed only by writer thread:
+        private final List<String> uncommittedLines = new ArrayList<>();
+        private ResourceResolver resolver;
+        private PackageActionLogWriter logWriter;
+        private boolean committed;
+        private int failedCommits;
+        private boolean failed;
+
+        private LogStream(String logPath, String applicantId, String jobId) {
+            this.logPath = logPath;
+            this.applicantId = applicantId;
+            this.jobId = jobId;
+        }
+
+        public void append(String line) {
+            long lineTail = tail.get();
+            while (lineTail - head.get() >= bufferCapacity) {
+                if (dropOnOverflow || !running || finished.getCount() == 0) {
+                    droppedLines.incrementAndGet();
+                    return;
+                }
+                wakeWriter();
+                LockSupport.parkNanos(this, FULL_BUFFER_WAIT_NANOS);
+            }
+            buffer.lazySet((int) (lineTail % bufferCapacity), line);
+            tail.lazySet(lineTail + 1);
+            if (lineTail + 1 - head.get() == bufferCapacity / 2) {
+                wakeWriter();
+            }
+        }
+
+        /**
+         * Closes stream and waits until its lines are persisted. Lines not persisted in close timeout are dropped, so log is not
+         * changed by writer thread after this method returns, unless commit of writer thread is still in progress.
+         */
+        public void close() {
+            closed = true;
+            wakeWriter();
+            try {
+                if (!finished.await(closeTimeout, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("Lines of log {} were not persisted in {} ms, remaining lines are dropped", logPath, closeTimeout);
+                    abandoned = true;
+                    wakeWriter();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Returns whether some lines appended to stream were not persisted.
+         */
+        public boolean isTruncated() {
+            return truncated || droppedLines.get() > 0;
+        }
+
+        /**
+         * Persists lines appended since previous call, returns whether stream is finished.
+         */
+        private boolean write() {
+            if (abandoned) {
+                finish();
+                return true;
+            }
+            boolean closing = closed;
+            long lineHead = head.get();
+            long lineTail = tail.get();
+            if (lineHead < lineTail || droppedLines.get() > 0 || !uncommittedLines.isEmpty()) {
+                PackageActionLogWriter writer = getLogWriter();
+                for (long line = lineHead; line < lineTail; line++) {
+                    int index = (int) (line % bufferCapacity);
+                    append(writer, buffer.get(index));
+                    buffer.lazySet(index, null);
+                }
+                head.set(lineTail);
+                long dropped = droppedLines.getAndSet(0L);
+                if (dropped > 0) {
+                    append(writer, "... " + dropped + " log lines were dropped, because log buffer was full");
+                }
+                commit();
+            }
+            if (closing && head.get() == tail.get() && uncommittedLines.isEmpty()) {
+                finish();
+                return true;
+            }
+            return false;
+        }
+
+        private void append(PackageActionLogWriter writer, String line) {
+            if (writer != null) {
+                writer.append(line);
+                uncommittedLines.add(line);
+            } else {
+                truncated = true;
+            }
+        }
+
+        // Lines of failed commit are appended again, to log resumed from its last committed state
+        private PackageActionLogWriter getLogWriter() {
+            if (logWriter == null && !failed) {
+                resolver = JobUtil.getImpersonatedResolver(resolverFactory, applicantId);
+                Resource logResource = resolver != null ? resolver.getResource(logPath) : null;
+                ModifiableValueMap logValueMap = logResource != null ? logResource.adaptTo(ModifiableValueMap.class) : null;
+                if (logValueMap == null) {
+                    LOG.warn("Could not access action log {}, its lines are dropped", logPath);
+                    fail();
+                    return null;
+                }
+                logWriter = committed ? PackageActionLogWriter.resume(logValueMap) : PackageActionLogWriter.create(logValueMap, gzipChunks);
+                logValueMap.put(PN_LOG_AUTHOR_SIGN, jobId);
+                uncommittedLines.forEach(logWriter::append);
+            }
+            return logWriter;
+        }
+
+        private void commit() {
+            if (logWriter == null || failed) {
+                return;
+            }
+            logWriter.flush();
+            try {
+                resolver.commit();
+                uncommittedLines.clear();
+                committed = true;
+                failedCommits = 0;
+            } catch (PersistenceException e) {
+                resolver.revert();
+                closeResolver();
+                if (++failedCommits < MAX_COMMIT_ATTEMPTS) {
+                    LOG.warn("Could not update log {}, its lines will be written again", logPath, e);
+                } else {
+                    LOG.warn("Could not update log {} in {} attempts, its lines are dropped", logPath, MAX_COMMIT_ATTEMPTS, e);
+                    fail();
+                }
+            }
+        }
+
+        private void fail() {
+            failed = true;
+            if (!uncommittedLines.isEmpty()) {
+                truncated = true;
+                uncommittedLines.clear();
+            }
+        }
+
+        private void closeResolver() {
+            if (resolver != null) {
+                resolver.close();
+                resolver = null;
+            }
+            logWriter = null;
+        }
+
+        private void finish() {
+            if (finished.getCount() == 0) {
+                return;
+            }
+            closeResolver();
+            if (head.get() < tail.get()) {
+                truncated = true;
+            }
+            fail();
+            finished.countDown();
+        }
+    }
+
+    @ObjectClassDefinition(name = "WebSight Package Manager: Package Action Log Sink Configuration")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Buffer capacity",
+                description = "Maximum number of lines of single log waiting to be persisted.",
+                type = AttributeType.INTEGER
+        )
+        int buffer_capacity() default 10000; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Flush interval",
+                description = "Time in milliseconds after which lines of logs are persisted, unless buffer gets half full earlier.",
+                type = AttributeType.LONG
+        )
+        long flush_interval() default 1000; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Close timeout",
+                description = "Time in seconds for which finished actions wait until lines of their logs are persisted.",
+                type = AttributeType.LONG
+        )
+        long close_timeout() default 60; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Drop lines on overflow",
+                description = "Drop lines appended to full buffer, instead of waiting until they are persisted. Number of dropped " +
+                        "lines is logged.",
+                type = AttributeType.BOOLEAN
+        )
+        boolean drop_on_overflow() default false; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Compress log chunks",
+                description = "Store completed chunks of new logs compressed with gzip. Compressed logs are sent to clients " +
+                        "accepting gzip encoding without decompressing them.",
+                type = AttributeType.BOOLEAN
+        )
+        boolean gzip_chunks() default false; // NOSONAR
+
+    }
+
+}
@@ -0,0 +1,146 @@
+package pl.ds.websight.packagemanager.packageaction;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import pl.ds.websight.packagemanager.util.ChunkedLogUtil;
+import pl.ds.websight.packagemanager.util.PackageLogUtil;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static pl.ds.websight.packagemanager.util.ChunkedLogUtil.GZIP_CHUNK_ENCODING;
+import static pl.ds.websight.packagemanager.util.ChunkedLogUtil.PN_LOG_CHUNK_ENCODING;
+import static pl.ds.websight.packagemanager.util.ChunkedLogUtil.PN_LOG_INDEX_FIRST_LINES;
+import static pl.ds.websight.packagemanager.util.ChunkedLogUtil.PN_LOG_INDEX_OFFSETS;
+import static pl.ds.websight.packagemanager.util.ChunkedLogUtil.PN_OPEN_LOG_CHUNK;
+import static pl.ds.websight.packagemanager.util.PackageLogUtil.MAX_ENTRY_CAPACITY;
+
+/**
+ * Appends lines to log stored in chunks, see {@link ChunkedLogUtil}. Appended lines are kept in open chunk, which is put to log
+ * value map on flush, completed chunks are put once as binaries. Changes are committed by callers.
+ */
+final class PackageActionLogWriter {
+
+    private final ModifiableValueMap logValueMap;
+    private final boolean gzipChunks;
+    private final StringBuilder openChunk = new StringBuilder();
+
+    private long[] firstLines;
+    private long[] offsets;
+    private int openChunkLines;
+    private boolean changed;
+    private boolean indexChanged;
+
+    private PackageActionLogWriter(ModifiableValueMap logValueMap, boolean gzipChunks, long[] firstLines, long[] offsets,
+            String openChunk) {
+        this.logValueMap = logValueMap;
+        this.gzipChunks = gzipChunks;
+        this.firstLines = firstLines;
+        this.offsets = offsets;
+        this.openChunk.append(openChunk);
+        this.openChunkLines = ChunkedLogUtil.splitLines(openChunk).size();
+    }
+
+    /**
+     * Creates writer of new log with uncompressed chunks, lines of previous log are removed.
+     */
+    static PackageActionLogWriter create(ModifiableValueMap logValueMap) {
+        return create(logValueMap, false);
+    }
+
+    /**
+     * Creates writer of new log, lines of previous log are removed. Completed chunks are compressed when gzip chunks are requested.
+     */
+    static PackageActionLogWriter create(ModifiableValueMap logValueMap, boolean gzipChunks) {
+        removeLog(logValueMap);
+        if (gzipChunks) {
+            logValueMap.put(PN_LOG_CHUNK_ENCODING, GZIP_CHUNK_ENCODING);
+        }
+        PackageActionLogWriter writer = new PackageActionLogWriter(logValueMap, gzipChunks, new long[]{ 0L }, new long[]{ 0L }, "");
+        writer.changed = true;
+        writer.indexChanged = true;
+        return writer;
+    }
+
+    /**
+     * Creates writer appending lines to existing log, chunks are completed with the same encoding as existing ones.
+     */
+    static PackageActionLogWriter resume(ModifiableValueMap logValueMap) {
+        if (!logValueMap.containsKey(PN_LOG_INDEX_FIRST_LINES)) {
+            return create(logValueMap);
+        }
+        long[] firstLines = ChunkedLogUtil.getIndex(logValueMap, PN_LOG_INDEX_FIRST_LINES);
+        long[] offsets = ChunkedLogUtil.getIndex(logValueMap, PN_LOG_INDEX_OFFSETS);
+        if (offsets.length != firstLines.length) {
+            offsets = Arrays.copyOf(offsets, firstLines.length);
+        }
+        boolean gzipChunks = GZIP_CHUNK_ENCODING.equals(logValueMap.get(PN_LOG_CHUNK_ENCODING, String.class));
+        return new PackageActionLogWriter(logValueMap, gzipChunks, firstLines, offsets, logValueMap.get(PN_OPEN_LOG_CHUNK, ""));
+    }
+
+    static void removeLog(ModifiableValueMap logValueMap) {
+        logValueMap.keySet().stream()
+                .filter(propName -> PackageLogUtil.isLogEntry(propName) || ChunkedLogUtil.isChunkedLogProperty(propName))
+                .collect(toList())
+                .forEach(logValueMap::remove);
+    }
+
+    void append(List<String> lines) {
+        for (String line : lines) {
+            append(line);
+        }
+    }
+
+    void append(String line) {
+        int lineStart = 0;
+        int lineEnd;
+        // Lines containing line feeds are appended as separate lines, so chunks are split by lines the same way when read
+        while ((lineEnd = line.indexOf('\n', lineStart)) != -1 && lineEnd < line.length() - 1) {
+            appendLine(line, lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+        }
+        appendLine(line, lineStart, line.endsWith("\n") ? line.length() - 1 : line.length());
+    }
+
+    private void appendLine(String line, int start, int end) {
+        openChunk.append(line, start, end).append('\n');
+        openChunkLines++;
+        changed = true;
+        if (openChunkLines >= MAX_ENTRY_CAPACITY) {
+            completeChunk();
+        }
+    }
+
+    private void completeChunk() {
+        byte[] chunk = openChunk.toString().getBytes(StandardCharsets.UTF_8);
+        int chunkIndex = firstLines.length - 1;
+        byte[] storedChunk = gzipChunks ? ChunkedLogUtil.compressChunk(chunk) : chunk;
+        logValueMap.put(ChunkedLogUtil.getChunkName(chunkIndex), new ByteArrayInputStream(storedChunk));
+        firstLines = Arrays.copyOf(firstLines, firstLines.length + 1);
+        firstLines[chunkIndex + 1] = firstLines[chunkIndex] + openChunkLines;
+        offsets = Arrays.copyOf(offsets, offsets.length + 1);
+        offsets[chunkIndex + 1] = offsets[chunkIndex] + chunk.length;
+        openChunk.setLength(0);
+        openChunkLines = 0;
+        indexChanged = true;
+    }
+
+    /**
+     * Puts open chunk to log value map, index is put only when chunks were completed since last flush.
+     */
+    void flush() {
+        if (!changed) {
+            return;
+        }
+        logValueMap.put(PN_OPEN_LOG_CHUNK, openChunk.toString());
+        if (indexChanged) {
+            logValueMap.put(PN_LOG_INDEX_FIRST_LINES, firstLines);
+            logValueMap.put(PN_LOG_INDEX_OFFSETS, offsets);
+            indexChanged = false;
+        }
+        changed = false;
+    }
+
+}
@@ -0,0 +1,115 @@
+package pl.ds.websight.packagemanager.packageaction;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import pl.ds.websight.packagemanager.util.PackageLogUtil;
+
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Summary of last finished package action. Summary is kept as property of action log node of package, so it is moved and
+ * removed together with the log, and actions of many packages are fetched by reading single property of every package.
+ */
+public final class PackageActionSummary {
+
+    public static final String PN_ACTION_SUMMARY = "actionSummary";
+
+    private static final int VALUES_COUNT = 5;
+
+    private final String actionType;
+    private final String applicantId;
+    private final Result result;
+    private final long duration;
+    private final long finished;
+
+    public PackageActionSummary(String actionType, String applicantId, Result result, long duration, long finished) {
+        this.actionType = actionType;
+        this.applicantId = applicantId;
+        this.result = result;
+        this.duration = duration;
+        this.finished = finished;
+    }
+
+    public String getActionType() {
+        return actionType;
+    }
+
+    public String getApplicantId() {
+        return applicantId;
+    }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public long getFinished() {
+        return finished;
+    }
+
+    String[] toValues() {
+        return new String[]{ actionType, applicantId, result.name(), String.valueOf(duration), String.valueOf(finished) };
+    }
+
+    private static PackageActionSummary fromValues(Value[] values) throws RepositoryException {
+        if (values.length != VALUES_COUNT) {
+            return null;
+        }
+        Result result = Result.fetch(values[2].getString());
+        return result != null ?
+                new PackageActionSummary(values[0].getString(), values[1].getString(), result, NumberUtils.toLong(values[3].getString()),
+                        NumberUtils.toLong(values[4].getString())) :
+                null;
+    }
+
+    /**
+     * Saves summary in action log of package.
+     */
+    public void save(ModifiableValueMap logValueMap) {
+        logValueMap.put(PN_ACTION_SUMMARY, toValues());
+    }
+
+    public static Map<String, PackageActionSummary> fetch(Session session, String... packagePaths) throws RepositoryException {
+        Map<String, PackageActionSummary> summaries = new HashMap<>(packagePaths.length);
+        for (String packagePath : packagePaths) {
+            String summaryPath = PackageLogUtil.getLogPath(packagePath) + '/' + PN_ACTION_SUMMARY;
+            if (!session.propertyExists(summaryPath)) {
+                continue;
+            }
+            Property property = session.getProperty(summaryPath);
+            PackageActionSummary summary = property.isMultiple() ? fromValues(property.getValues()) : null;
+            if (summary != null) {
+                summaries.put(packagePath, summary);
+            }
+        }
+        return summaries;
+    }
+
+    public enum Result {
+        SUCCEEDED,
+        FAILED,
+
+        /**
+         * Result of actions which summaries were imported from action logs.
+         */
+        UNKNOWN;
+
+        private static Result fetch(String name) {
+            for (Result result : values()) {
+                if (result.name().equals(name)) {
+                    return result;
+                }
+            }
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package pl.ds.websight.packagemanager.packageaction;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.vault.util.Text;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.consumer.JobConsumer;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.util.JobUtil;
+import pl.ds.websight.packagemanager.util.PackageLogUtil;
+
+import java.util.Map;
+
+/**
+ * Creates summaries of package actions finished before summaries were introduced, from action logs and from summaries kept
+ * formerly as properties of single node. Summaries are imported once by background job, which is marked on logs root node, so
+ * the job is not added again on later starts.
+ */
+@Component(
+        service = JobConsumer.class,
+        immediate = true,
+        property = JobConsumer.PROPERTY_TOPICS + '=' + PackageActionSummaryImporter.TOPIC)
+public class PackageActionSummaryImporter implements JobConsumer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageActionSummaryImporter.class);
+
+    static final String TOPIC = "pl/ds/websight/packagemanager/summaries/import";
+
+    // Service user of this subservice reads and writes action logs
+    private static final String SUBSERVICE_NAME = "summaries";
+
+    private static final String LOGS_PATH = StringUtils.removeEnd(PackageLogUtil.LOG_PATH_PREFIX, "/");
+    private static final String LEGACY_SUMMARIES_PATH = "/var/websight/websight-package-manager-service/actions"; //NOSONAR
+    private static final String PN_SUMMARIES_IMPORTED = "summariesImported";
+    private static final int COMMIT_BATCH_SIZE = 1000;
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private JobManager jobManager;
+
+    @Activate
+    private void activate() {
+        try (ResourceResolver resolver = JobUtil.getServiceResolver(resolverFactory, SUBSERVICE_NAME)) {
+            if (resolver == null) {
+                LOG.warn("Could not access resolver to check whether package action summaries were imported");
+                return;
+            }
+            // There are no logs to import summaries from, new logs are created with summaries
+            Resource logs = resolver.getResource(LOGS_PATH);
+            if (logs != null && !logs.getValueMap().get(PN_SUMMARIES_IMPORTED, false)) {
+                jobManager.addJob(TOPIC, null);
+            }
+        }
+    }
+
+    @Override
+    public JobResult process(Job job) {
+        try (ResourceResolver resolver = JobUtil.getServiceResolver(resolverFactory, SUBSERVICE_NAME)) {
+            if (resolver == null) {
+                LOG.warn("Could not access resolver to import package action summaries");
+                return JobResult.FAILED;
+            }
+            Resource logs = resolver.getResource(LOGS_PATH);
+            ModifiableValueMap logsValueMap = logs != null ? logs.adaptTo(ModifiableValueMap.class) : null;
+            if (logsValueMap == null || logsValueMap.get(PN_SUMMARIES_IMPORTED, false)) {
+                // Summaries were imported on another cluster instance or there are no logs
+                return JobResult.OK;
+            }
+            SummariesImport summariesImport = new SummariesImport(resolver);
+            importLegacySummaries(summariesImport);
+            importSummaries(logs, summariesImport);
+            logsValueMap.put(PN_SUMMARIES_IMPORTED, true);
+            resolver.commit();
+            LOG.info("Imported {} package action summaries", summariesImport.imported);
+            return JobResult.OK;
+        } catch (PersistenceException e) {
+            LOG.warn("Could not import package action summaries", e);
+            return JobResult.FAILED;
+        }
+    }
+
+    // Former summaries are named after escaped package paths relative to packages root
+    private static void importLegacySummaries(SummariesImport summariesImport) throws PersistenceException {
+        Resource legacySummaries = summariesImport.resolver.getResource(LEGACY_SUMMARIES_PATH);
+        if (legacySummaries == null) {
+            return;
+        }
+        for (Map.Entry<String, Object> property : legacySummaries.getValueMap().entrySet()) {
+            if (property.getValue() instanceof String[]) {
+                Resource logResource = summariesImport.resolver.getResource(
+                        PackageLogUtil.LOG_PATH_PREFIX + Text.unescapeIllegalJcrChars(property.getKey()));
+                if (logResource != null) {
+                    summariesImport.add(logResource, (String[]) property.getValue());
+                }
+            }
+        }
+        summariesImport.resolver.delete(legacySummaries);
+    }
+
+    private static void importSummaries(Resource logResource, SummariesImport summariesImport) throws PersistenceException {
+        ValueMap logValueMap = logResource.getValueMap();
+        String actionType = logValueMap.get(PackageLogUtil.PN_LOG_PACKAGE_ACTION_TYPE, String.class);
+        String applicantId = logValueMap.get(PackageLogUtil.PN_APPLICANT_ID, String.class);
+        if (actionType != null && applicantId != null) {
+            // Duration and finish time of actions are not logged
+            summariesImport.add(logResource,
+                    new PackageActionSummary(actionType, applicantId, PackageActionSummary.Result.UNKNOWN, 0L, 0L).toValues());
+        }
+        for (Resource child : logResource.getChildren()) {
+            importSummaries(child, summariesImport);
+        }
+    }
+
+    private static final class SummariesImport {
+
+        private final ResourceResolver resolver;
+
+        private int imported;
+        private int uncommitted;
+
+        private SummariesImport(ResourceResolver resolver) {
+            this.resolver = resolver;
+        }
+
+        // Summaries of actions finished during import are kept
+        private void add(Resource logResource, String[] summaryValues) throws PersistenceException {
+            ModifiableValueMap logValueMap = logResource.adaptTo(ModifiableValueMap.class);
+            if (logValueMap == null || logValueMap.containsKey(PackageActionSummary.PN_ACTION_SUMMARY)) {
+                return;
+            }
+            logValueMap.put(PackageActionSummary.PN_ACTION_SUMMARY, summaryValues);
+            imported++;
+            if (++uncommitted >= COMMIT_BATCH_SIZE) {
+                resolver.commit();
+                uncommitted = 0;
+            }
+        }
+    }
+
+}
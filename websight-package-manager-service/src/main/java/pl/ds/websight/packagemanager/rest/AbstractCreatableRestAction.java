@@ -4,10 +4,11 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
 import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
 import org.apache.jackrabbit.vault.packaging.Packaging;
-import org.apache.sling.event.jobs.JobManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.ds.websight.packagemanager.JcrPackageEditFacade;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.dto.PackageDto;
 import pl.ds.websight.packagemanager.util.JcrPackageUtil;
 import pl.ds.websight.rest.framework.RestAction;
@@ -26,11 +27,15 @@ public abstract class AbstractCreatableRestAction extends AbstractRestAction<Pac
 
     protected Packaging packaging;
 
-    protected JobManager jobManager;
+    protected PackageJobRegistry jobRegistry;
+
+    protected PackageCatalog packageCatalog;
 
     protected abstract void setPackaging(Packaging packaging);
 
-    protected abstract void setJobManager(JobManager jobManager);
+    protected abstract void setJobRegistry(PackageJobRegistry jobRegistry);
+
+    protected abstract void setPackageCatalog(PackageCatalog packageCatalog);
 
     protected RestActionResult<PackageDto> performCreation(PackageRestModel model) throws IOException, RepositoryException {
         return performCreation(model, null);
@@ -50,7 +55,7 @@ public abstract class AbstractCreatableRestAction extends AbstractRestAction<Pac
                 return RestActionResult.failure(
                         Messages.CREATE_PACKAGE_ERROR_CREATED_PARTIALLY,
                         Messages.formatMessage(Messages.CREATE_PACKAGE_ERROR_CREATED_PARTIALLY_DETAILS, packageName),
-                        PackageDto.wrap(createdPackage, session, jobManager));
+                        PackageDto.wrap(createdPackage, session, jobRegistry));
             }
             editFacade.setFilters(model.getFilters());
             String description = model.getDescription();
@@ -66,13 +71,14 @@ public abstract class AbstractCreatableRestAction extends AbstractRestAction<Pac
                 }
             }
             session.save();
+            packageCatalog.refresh(createdPackage.getNode().getPath());
             if (pathSaveHelper != null) {
                 pathSaveHelper.setPathRequestAttribute(createdPackage.getNode());
             }
             return RestActionResult.success(
                     Messages.CREATE_PACKAGE_SUCCESS,
                     Messages.formatMessage(Messages.CREATE_PACKAGE_SUCCESS_DETAILS, packageName),
-                    PackageDto.wrap(createdPackage, session, jobManager));
+                    PackageDto.wrap(createdPackage, session, jobRegistry));
         } catch (ItemExistsException e) {
             LOG.warn("Package already exists", e);
             return RestActionResult.failure(
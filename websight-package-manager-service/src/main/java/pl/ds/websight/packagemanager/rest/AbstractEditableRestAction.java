@@ -16,6 +16,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.ds.websight.packagemanager.JcrPackageEditFacade;
 import pl.ds.websight.packagemanager.JobProperties;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.dto.PackageDto;
 import pl.ds.websight.packagemanager.rest.schedule.Schedule;
 import pl.ds.websight.packagemanager.rest.schedule.ScheduleActionType;
@@ -45,10 +47,18 @@ public abstract class AbstractEditableRestAction extends AbstractRestAction<Edit
 
     protected JobManager jobManager;
 
+    protected PackageJobRegistry jobRegistry;
+
+    protected PackageCatalog packageCatalog;
+
     protected abstract void setPackaging(Packaging packaging);
 
     protected abstract void setJobManager(JobManager jobManager);
 
+    protected abstract void setJobRegistry(PackageJobRegistry jobRegistry);
+
+    protected abstract void setPackageCatalog(PackageCatalog packageCatalog);
+
     protected RestActionResult<PackageDto> performEdit(EditPackageRestModel model) throws IOException, RepositoryException {
         return performEdit(model, null);
     }
@@ -87,14 +97,21 @@ public abstract class AbstractEditableRestAction extends AbstractRestAction<Edit
             String newVersion = model.getVersion();
             if (hasPackageIdChanged(packageToEdit, newName, newGroup, newVersion)) {
                 packageToEdit = packageManager.rename(packageToEdit, newGroup, newName, newVersion);
+                packageCatalog.refresh(packageToEditPath);
+                if (packageToEdit.getNode() != null) {
+                    packageCatalog.refresh(packageToEdit.getNode().getPath());
+                }
                 movePackageLogs(packageToEdit, packageToEditPath, session);
-                if (!updatePackageActionsSchedules(packageToEdit, packageToEditPath, jobManager)) {
+                boolean schedulesUpdated = updatePackageActionsSchedules(packageToEdit, packageToEditPath, jobManager);
+                jobRegistry.invalidateSchedules();
+                if (!schedulesUpdated) {
                     return RestActionResult.failure(Messages.EDIT_PACKAGE_ERROR,
                             Messages.formatMessage(Messages.EDIT_PACKAGE_ERROR_CAN_NOT_UPDATE_SCHEDULED_ACTIONS_DETAILS,
                                     packageToEditPath));
                 }
             } else {
                 session.save();
+                packageCatalog.refresh(packageToEditPath);
             }
             if (pathSaveHelper != null) {
                 pathSaveHelper.setPathRequestAttribute(packageToEdit.getNode());
@@ -102,7 +119,7 @@ public abstract class AbstractEditableRestAction extends AbstractRestAction<Edit
             return RestActionResult.success(
                     Messages.EDIT_PACKAGE_SUCCESS,
                     Messages.formatMessage(Messages.EDIT_PACKAGE_SUCCESS_DETAILS, packageToEditPath),
-                    PackageDto.wrap(packageToEdit, session, jobManager));
+                    PackageDto.wrap(packageToEdit, session, jobRegistry));
         } catch (AccessDeniedException e) {
             LOG.debug("User with id: {} is not allowed to edit a package on: {}", session.getUserID(), packageToEditPath, e);
             return RestActionResult.failure(
@@ -131,20 +148,21 @@ public abstract class AbstractEditableRestAction extends AbstractRestAction<Edit
     }
 
     private static void movePackageLogs(JcrPackage packageRenamed, String oldPackagePath, Session session) throws RepositoryException {
+        Node renamedPackageNode = packageRenamed.getNode();
+        if (renamedPackageNode == null) {
+            return;
+        }
         String oldLogPath = PackageLogUtil.getLogPath(oldPackagePath);
         if (session.nodeExists(oldLogPath)) {
-            Node renamedPackageNode = packageRenamed.getNode();
-            if (renamedPackageNode != null) {
-                String logPath = PackageLogUtil.getLogPath(renamedPackageNode.getPath());
-                if (anyIntermediateLogNodeNotExist(logPath, session)) {
-                    createAllIntermediateLogNodes(logPath, session);
-                } else if (session.nodeExists(logPath)) {
-                    session.removeItem(logPath);
-                    session.save();
-                }
-                session.move(oldLogPath, logPath);
+            String logPath = PackageLogUtil.getLogPath(renamedPackageNode.getPath());
+            if (anyIntermediateLogNodeNotExist(logPath, session)) {
+                createAllIntermediateLogNodes(logPath, session);
+            } else if (session.nodeExists(logPath)) {
+                session.removeItem(logPath);
                 session.save();
             }
+            session.move(oldLogPath, logPath);
+            session.save();
         }
     }
 
@@ -6,6 +6,7 @@ import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
 import org.apache.jackrabbit.vault.packaging.Packaging;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
 import pl.ds.websight.packagemanager.dto.PackageUploadDto;
 import pl.ds.websight.packagemanager.util.JcrPackageUtil;
 import pl.ds.websight.rest.framework.RestAction;
@@ -28,8 +29,12 @@ public abstract class AbstractUploadableRestAction extends AbstractRestAction<Up
 
     protected Packaging packaging;
 
+    protected PackageCatalog packageCatalog;
+
     protected abstract void setPackaging(Packaging packaging);
 
+    protected abstract void setPackageCatalog(PackageCatalog packageCatalog);
+
     protected RestActionResult<PackageUploadDto> performUpload(UploadPackageRestModel model) throws IOException, RepositoryException {
         return performUpload(model, null);
     }
@@ -50,13 +55,17 @@ public abstract class AbstractUploadableRestAction extends AbstractRestAction<Up
         try (InputStream packageStream = model.getFileParam().getInputStream();
              JcrPackage uploadedPackage = uploadPackage(packageStream, model.getSession(), model.isForce())) {
             LOG.debug("Successfully uploaded a package");
+            String uploadedPackagePath = getPath(uploadedPackage);
+            if (!uploadedPackagePath.isEmpty()) {
+                packageCatalog.refresh(uploadedPackagePath);
+            }
             if (pathSaveHelper != null) {
                 pathSaveHelper.setPathRequestAttribute(uploadedPackage.getNode());
             }
             return RestActionResult.success(
                     Messages.UPLOAD_PACKAGE_SUCCESS,
                     Messages.formatMessage(Messages.UPLOAD_PACKAGE_SUCCESS_DETAILS, JcrPackageUtil.getSimplePackageName(uploadedPackage)),
-                    new PackageUploadDto(getPath(uploadedPackage)));
+                    new PackageUploadDto(uploadedPackagePath));
         } catch (ItemExistsException e) {
             return RestActionResult.failure(
                     Messages.UPLOAD_PACKAGE_ERROR,
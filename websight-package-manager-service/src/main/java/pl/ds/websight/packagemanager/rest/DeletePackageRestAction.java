@@ -7,6 +7,7 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
 import pl.ds.websight.packagemanager.util.JcrPackageUtil;
 import pl.ds.websight.packagemanager.util.OpenPackageException;
 import pl.ds.websight.packagemanager.util.PackageLogUtil;
@@ -27,12 +28,16 @@ public class DeletePackageRestAction extends AbstractRestAction<DeletePackageRes
     @Reference
     private Packaging packaging;
 
+    @Reference
+    private PackageCatalog packageCatalog;
+
     @Override
     protected RestActionResult<Void> performAction(DeletePackageRestModel model) throws RepositoryException {
         Session session = model.getSession();
         String packagePath = model.getPath();
         try {
             processDelete(packagePath, session, packaging.getPackageManager(session));
+            packageCatalog.refresh(packagePath);
             return RestActionResult.success(
                     Messages.DELETE_PACKAGE_SUCCESS,
                     Messages.formatMessage(Messages.DELETE_PACKAGE_SUCCESS_DETAILS, packagePath));
@@ -53,10 +58,9 @@ public class DeletePackageRestAction extends AbstractRestAction<DeletePackageRes
 
     private static void deletePackageLogs(Session session, String packagePath) throws RepositoryException {
         String logPath = PackageLogUtil.getLogPath(packagePath);
-        if (!session.nodeExists(logPath)) {
-            return;
+        if (session.nodeExists(logPath)) {
+            session.removeItem(logPath);
         }
-        session.removeItem(logPath);
         session.save();
     }
 
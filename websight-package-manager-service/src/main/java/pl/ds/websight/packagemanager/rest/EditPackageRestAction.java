@@ -4,6 +4,8 @@ import org.apache.jackrabbit.vault.packaging.Packaging;
 import org.apache.sling.event.jobs.JobManager;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.dto.PackageDto;
 import pl.ds.websight.rest.framework.RestAction;
 import pl.ds.websight.rest.framework.RestActionResult;
@@ -32,4 +34,16 @@ public class EditPackageRestAction extends AbstractEditableRestAction {
     protected void setJobManager(JobManager jobManager) {
         super.jobManager = jobManager;
     }
+
+    @Override
+    @Reference
+    protected void setJobRegistry(PackageJobRegistry jobRegistry) {
+        super.jobRegistry = jobRegistry;
+    }
+
+    @Override
+    @Reference
+    protected void setPackageCatalog(PackageCatalog packageCatalog) {
+        super.packageCatalog = packageCatalog;
+    }
 }
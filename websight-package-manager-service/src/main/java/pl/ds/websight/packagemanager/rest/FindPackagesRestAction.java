@@ -4,7 +4,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
 import org.apache.jackrabbit.vault.packaging.JcrPackageManager;
 import org.apache.jackrabbit.vault.packaging.Packaging;
-import org.apache.sling.event.jobs.JobManager;
 import org.apache.sling.event.jobs.ScheduledJobInfo;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -15,14 +14,24 @@ import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.PackageCursor;
 import pl.ds.websight.packagemanager.PackageFinder;
+import pl.ds.websight.packagemanager.PackageSorter;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+import pl.ds.websight.packagemanager.catalog.PackageDependencyIndex;
+import pl.ds.websight.packagemanager.catalog.PackageDiscovery;
+import pl.ds.websight.packagemanager.catalog.PackageDiscoveryMode;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
+import pl.ds.websight.packagemanager.catalog.ParallelPackageTraversal;
 import pl.ds.websight.packagemanager.dto.PackageActionDto;
 import pl.ds.websight.packagemanager.dto.PackageDto;
 import pl.ds.websight.packagemanager.dto.PackageListDto;
 import pl.ds.websight.packagemanager.dto.PackageScheduleActionInfoDto;
+import pl.ds.websight.packagemanager.rest.requestparameters.FilterContext;
 import pl.ds.websight.packagemanager.rest.requestparameters.FilterOption;
+import pl.ds.websight.packagemanager.rest.requestparameters.PackageField;
 import pl.ds.websight.packagemanager.util.JcrPackageUtil;
-import pl.ds.websight.packagemanager.util.JobUtil;
+import pl.ds.websight.packagemanager.util.PackageQueryUtil;
 import pl.ds.websight.rest.framework.RestAction;
 import pl.ds.websight.rest.framework.RestActionResult;
 import pl.ds.websight.rest.framework.annotations.SlingAction;
@@ -32,11 +41,13 @@ import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.OptionalLong;
+import java.util.function.Predicate;
 
 import static java.util.stream.Collectors.toList;
 import static pl.ds.websight.packagemanager.PackageFinder.PACKAGES_PER_PAGE;
@@ -56,7 +67,19 @@ public class FindPackagesRestAction extends AbstractRestAction<FindPackagesRestM
     private Packaging packaging;
 
     @Reference
-    private JobManager jobManager;
+    private PackageJobRegistry jobRegistry;
+
+    @Reference
+    private PackageCatalog packageCatalog;
+
+    @Reference
+    private ParallelPackageTraversal parallelTraversal;
+
+    @Reference
+    private PackageDiscovery packageDiscovery;
+
+    @Reference
+    private PackageDependencyIndex dependencyIndex;
 
     private Config config;
 
@@ -71,39 +94,145 @@ public class FindPackagesRestAction extends AbstractRestAction<FindPackagesRestM
             LOG.debug("User is not allowed to read packages");
             return PackageListDto.EMPTY;
         }
-        List<JcrPackage> fetchedPackages = new LinkedList<>();
-        try {
-            JcrPackageManager packageManager = packaging.getPackageManager(session);
-            String group = getRequestedOrPackageGroupIfBothRequested(model, packageManager);
-            boolean groupRequested = !JcrPackageUtil.NO_GROUP.equals(group);
-            String packagesSearchPath = getPackagesSearchPath(group, groupRequested);
-            boolean limitExceeded = false;
-            if (session.nodeExists(packagesSearchPath)) {
-                Node searchRootNode = session.getNode(packagesSearchPath);
-                long allPackagesCount = JcrPackageUtil.countPackages(searchRootNode, config.count_limit(), groupRequested);
-                if (allPackagesCount > config.count_limit()) {
-                    limitExceeded = true;
-                    long limit = PackageFinder.getOffset(model.getPageNumber()) + PACKAGES_PER_PAGE * LIMITED_NEXT_PAGES;
-                    fetchedPackages =
-                            fetchPackagesLimited(new ArrayList<>(), model, packageManager, searchRootNode, limit, groupRequested,
-                                    jobManager);
+        JcrPackageManager packageManager = packaging.getPackageManager(session);
+        String group = getRequestedOrPackageGroupIfBothRequested(model, packageManager);
+        boolean groupRequested = !JcrPackageUtil.NO_GROUP.equals(group);
+        String packagesSearchPath = getPackagesSearchPath(group, groupRequested);
+        boolean limitExceeded = false;
+        List<PackageDefinition> foundPackages = Collections.emptyList();
+        if (session.nodeExists(packagesSearchPath)) {
+            Node searchRootNode = session.getNode(packagesSearchPath);
+            PackageDiscoveryMode discoveryMode = packageDiscovery.getMode();
+            Predicate<PackageDefinition> packageFilter = getPackageFilter(model);
+            List<PackageDefinition> loadedPackages = loadPackages(discoveryMode, session, packagesSearchPath, groupRequested);
+            long allPackagesCount = countPackages(discoveryMode, loadedPackages, searchRootNode, groupRequested);
+            boolean countLimitExceeded = allPackagesCount > config.count_limit();
+            // Traversal above count limit walks only up to requested page, as cursor paging would need to walk whole tree
+            boolean cursorPaging = discoveryMode != PackageDiscoveryMode.TRAVERSAL || !countLimitExceeded;
+            if (cursorPaging && (model.getCursor() != null || (countLimitExceeded && StringUtils.isBlank(model.getPath())))) {
+                List<PackageDefinition> definitions = findPackageDefinitions(discoveryMode, loadedPackages, searchRootNode, model,
+                        groupRequested);
+                return findPackagesPage(definitions, model, packageFilter, packageManager, countLimitExceeded, group);
+            }
+            if (countLimitExceeded) {
+                limitExceeded = true;
+                long limit = PackageFinder.getOffset(model.getPageNumber()) + PACKAGES_PER_PAGE * LIMITED_NEXT_PAGES;
+                if (discoveryMode == PackageDiscoveryMode.TRAVERSAL) {
+                    foundPackages = fetchPackagesLimited(new ArrayList<>(), model, packageFilter, searchRootNode, limit, groupRequested);
                 } else {
-                    fetchedPackages = fetchPackages(searchRootNode, model.getPackageNameFilter(), groupRequested).stream()
-                            .sorted(model.getSortBy().getComparator())
-                            .map(definition -> openPackage(packageManager, definition.getPackageNode()))
-                            .filter(Objects::nonNull)
-                            .collect(toList());
+                    Iterator<PackageDefinition> definitions = loadedPackages != null ?
+                            loadedPackages.iterator() :
+                            PackageQueryUtil.iteratePackages(session, packagesSearchPath, groupRequested,
+                                    model.getPackageNameFilter(), model.getSortBy());
+                    foundPackages = fetchPackagesLimited(definitions, model, packageFilter, limit);
                 }
+            } else {
+                foundPackages = findPackageDefinitions(discoveryMode, loadedPackages, searchRootNode, model, groupRequested).stream()
+                        .filter(packageFilter)
+                        .collect(toList());
             }
-            List<JcrPackage> foundPackages = filterPackagesIfNeeded(fetchedPackages, model, limitExceeded, session);
-            long foundPackagesCount = foundPackages.size();
-            long numberOfPages = PackageFinder.getNumberOfPages(foundPackagesCount);
-            long pageNumber = getPageNumber(model, foundPackages);
-            long offset = PackageFinder.getOffset(pageNumber);
-            List<PackageDto> packages = getPackagesForRequestedPage(foundPackages, session, offset);
-            return new PackageListDto(foundPackagesCount, limitExceeded, numberOfPages, pageNumber, config.count_limit(), group, packages);
-        } finally {
-            fetchedPackages.forEach(JcrPackageUtil::close);
+        }
+        long pageNumber;
+        List<PackageDefinition> pagePackages;
+        if (limitExceeded) {
+            // Packages fetched up to the limit are listed in discovery order
+            pageNumber = getPageNumber(model, foundPackages);
+            pagePackages = foundPackages.stream()
+                    .skip(PackageFinder.getOffset(pageNumber))
+                    .limit(PACKAGES_PER_PAGE)
+                    .collect(toList());
+        } else {
+            PackageSorter sorter = new PackageSorter(foundPackages, model.getSortBy());
+            pageNumber = getPageNumber(model, sorter);
+            pagePackages = sorter.select(PackageFinder.getOffset(pageNumber), PACKAGES_PER_PAGE + 1);
+        }
+        return createPackageList(pagePackages, foundPackages.size(), limitExceeded, pageNumber, group, model, packageManager);
+    }
+
+    /**
+     * Returns page starting directly after requested cursor, or at requested page number when cursor is not provided.
+     */
+    private PackageListDto findPackagesPage(List<PackageDefinition> definitions, FindPackagesRestModel model,
+            Predicate<PackageDefinition> packageFilter, JcrPackageManager packageManager, boolean limitExceeded, String group) {
+        List<PackageDefinition> foundPackages = definitions.stream()
+                .filter(packageFilter)
+                .collect(toList());
+        PackageCursor cursor = model.getCursor();
+        List<PackageDefinition> pagePackages;
+        long pageNumber;
+        if (cursor != null) {
+            List<PackageDefinition> nextPackages = foundPackages.stream()
+                    .filter(cursor::isAfter)
+                    .collect(toList());
+            pageNumber = model.getPageNumber();
+            pagePackages = new PackageSorter(nextPackages, model.getSortBy()).select(0, PACKAGES_PER_PAGE + 1);
+        } else {
+            pageNumber = Math.max(model.getPageNumber(), 1L);
+            pagePackages = new PackageSorter(foundPackages, model.getSortBy())
+                    .select(PackageFinder.getOffset(pageNumber), PACKAGES_PER_PAGE + 1);
+        }
+        return createPackageList(pagePackages, foundPackages.size(), limitExceeded, pageNumber, group, model, packageManager);
+    }
+
+    /**
+     * Creates packages list from page packages, which may contain one more package indicating that there is a next page.
+     */
+    private PackageListDto createPackageList(List<PackageDefinition> pagePackages, long foundPackagesCount, boolean limitExceeded,
+            long pageNumber, String group, FindPackagesRestModel model, JcrPackageManager packageManager) {
+        boolean hasNextPage = pagePackages.size() > PACKAGES_PER_PAGE;
+        List<PackageDefinition> packagesToWrap = hasNextPage ? pagePackages.subList(0, PACKAGES_PER_PAGE) : pagePackages;
+        List<PackageDto> packages = getPackagesForRequestedPage(packagesToWrap, packageManager, model.getSession(),
+                model.getPackageFields());
+        PackageListDto packageList = new PackageListDto(foundPackagesCount, limitExceeded,
+                PackageFinder.getNumberOfPages(foundPackagesCount), pageNumber, config.count_limit(), group, packages);
+        if (hasNextPage) {
+            PackageDefinition lastPagePackage = packagesToWrap.get(packagesToWrap.size() - 1);
+            packageList.setNextCursor(PackageCursor.of(model.getSortBy(), lastPagePackage).encode());
+        }
+        return packageList;
+    }
+
+    /**
+     * Returns all packages found under search path when discovery mode provides them up front, {@code null} otherwise.
+     */
+    private List<PackageDefinition> loadPackages(PackageDiscoveryMode discoveryMode, Session session, String searchPath, boolean deep)
+            throws RepositoryException {
+        switch (discoveryMode) {
+            case CATALOG:
+                return packageCatalog.findPackages(session, searchPath, deep);
+            case PARALLEL_TRAVERSAL:
+                return parallelTraversal.findPackages(session, searchPath, deep);
+            default:
+                return null;
+        }
+    }
+
+    private long countPackages(PackageDiscoveryMode discoveryMode, List<PackageDefinition> loadedPackages, Node searchRootNode,
+            boolean deep) throws RepositoryException {
+        switch (discoveryMode) {
+            case CATALOG:
+            case PARALLEL_TRAVERSAL:
+                return loadedPackages.size();
+            case QUERY:
+                return PackageQueryUtil.countPackages(searchRootNode.getSession(), searchRootNode.getPath(), config.count_limit(), deep);
+            default:
+                return JcrPackageUtil.countPackages(searchRootNode, config.count_limit(), deep);
+        }
+    }
+
+    private static List<PackageDefinition> findPackageDefinitions(PackageDiscoveryMode discoveryMode,
+            List<PackageDefinition> loadedPackages, Node searchRootNode, FindPackagesRestModel model, boolean deep)
+            throws RepositoryException {
+        switch (discoveryMode) {
+            case CATALOG:
+            case PARALLEL_TRAVERSAL:
+                return filterByName(loadedPackages, model.getPackageNameFilter());
+            case QUERY:
+                // All found packages are sorted in memory, so query results are not ordered
+                return PackageQueryUtil.findPackages(searchRootNode.getSession(), searchRootNode.getPath(), deep,
+                        model.getPackageNameFilter());
+            default:
+                return fetchPackages(searchRootNode, model.getPackageNameFilter(), deep);
         }
     }
 
@@ -132,35 +261,46 @@ public class FindPackagesRestAction extends AbstractRestAction<FindPackagesRestM
         return JcrPackageUtil.PACKAGES_ROOT_PATH;
     }
 
-    private static List<JcrPackage> fetchPackagesLimited(List<String> paths, FindPackagesRestModel model,
-            JcrPackageManager packageManager, Node root, long limit, boolean deep, JobManager jobManager) throws RepositoryException {
-        List<JcrPackage> packages = new ArrayList<>();
+    private static List<PackageDefinition> fetchPackagesLimited(List<PackageDefinition> packages, FindPackagesRestModel model,
+            Predicate<PackageDefinition> packageFilter, Node root, long limit, boolean deep) throws RepositoryException {
         NodeIterator nodeIterator = root.getNodes();
-        while (nodeIterator.hasNext() && isBelowLimitOrShouldSearch(paths, model.getPath(), limit)) {
+        while (nodeIterator.hasNext() && isBelowLimitOrShouldSearch(packages, model.getPath(), limit)) {
             Node child = nodeIterator.nextNode();
             String name = child.getName();
             if (".snapshot".equals(name)) {
                 continue;
             }
             if (JcrPackageUtil.isValidPackageNode(child) && StringUtils.containsIgnoreCase(name, model.getPackageNameFilter())) {
-                JcrPackage jcrPackage = openPackage(packageManager, child);
-                if (jcrPackage != null && matchesAllFilters(jcrPackage, model.getFilterOptions(), model.getUserID(), jobManager)) {
-                    packages.add(jcrPackage);
-                    paths.add(child.getPath());
+                PackageDefinition definition = new PackageDefinition(child);
+                if (packageFilter.test(definition)) {
+                    packages.add(definition);
                 }
             } else if (deep && child.hasNodes()) {
-                packages.addAll(fetchPackagesLimited(paths, model, packageManager, child, limit, true, jobManager));
+                fetchPackagesLimited(packages, model, packageFilter, child, limit, true);
+            }
+        }
+        return packages;
+    }
+
+    private static List<PackageDefinition> fetchPackagesLimited(Iterator<PackageDefinition> definitionIterator,
+            FindPackagesRestModel model, Predicate<PackageDefinition> packageFilter, long limit) {
+        List<PackageDefinition> packages = new ArrayList<>();
+        while (definitionIterator.hasNext() && isBelowLimitOrShouldSearch(packages, model.getPath(), limit)) {
+            PackageDefinition definition = definitionIterator.next();
+            if (StringUtils.containsIgnoreCase(definition.getName(), model.getPackageNameFilter()) &&
+                    packageFilter.test(definition)) {
+                packages.add(definition);
             }
         }
         return packages;
     }
 
-    private static boolean isBelowLimitOrShouldSearch(List<String> paths, String searchedPackagePath, long limit) {
+    private static boolean isBelowLimitOrShouldSearch(List<PackageDefinition> packages, String searchedPackagePath, long limit) {
         if (StringUtils.isBlank(searchedPackagePath)) {
-            return paths.size() < limit;
+            return packages.size() < limit;
         }
-        int indexOfSearchedPackage = paths.indexOf(searchedPackagePath);
-        return indexOfSearchedPackage == -1 || paths.size() - indexOfSearchedPackage < PACKAGES_PER_PAGE * LIMITED_NEXT_PAGES;
+        int indexOfSearchedPackage = PackageFinder.indexOfPackage(searchedPackagePath, packages);
+        return indexOfSearchedPackage == -1 || packages.size() - indexOfSearchedPackage < PACKAGES_PER_PAGE * LIMITED_NEXT_PAGES;
     }
 
     private static List<PackageDefinition> fetchPackages(Node root, String filterPhrase, boolean deep) throws RepositoryException {
@@ -181,34 +321,42 @@ public class FindPackagesRestAction extends AbstractRestAction<FindPackagesRestM
         return packages;
     }
 
-    private static JcrPackage openPackage(JcrPackageManager packageManager, Node packageNode) {
+    private static List<PackageDefinition> filterByName(List<PackageDefinition> definitions, String filterPhrase) {
+        return definitions.stream()
+                .filter(definition -> StringUtils.containsIgnoreCase(definition.getName(), filterPhrase))
+                .collect(toList());
+    }
+
+    private static JcrPackage openPackage(JcrPackageManager packageManager, Session session, String packagePath) {
         try {
-            return packageManager.open(packageNode);
+            return packageManager.open(session.getNode(packagePath));
         } catch (RepositoryException e) {
             LOG.warn("Error while opening package", e);
         }
         return null;
     }
 
-    private List<JcrPackage> filterPackagesIfNeeded(List<JcrPackage> packages, FindPackagesRestModel model, boolean limitExceeded,
-            Session session) {
+    private Predicate<PackageDefinition> getPackageFilter(FindPackagesRestModel model) {
         List<FilterOption> filterOptions = model.getFilterOptions();
-        if (limitExceeded || filterOptions.isEmpty()) {
-            return packages;
+        if (filterOptions.isEmpty()) {
+            return definition -> true;
         }
-        String userId = session.getUserID();
-        return packages.stream()
-                .filter(jcrPackage -> matchesAllFilters(jcrPackage, filterOptions, userId, jobManager))
-                .collect(toList());
+        FilterContext filterContext = new FilterContext(model.getSession(), jobRegistry);
+        return definition -> filterOptions.stream().allMatch(filterOption -> filterOption.matches(definition, filterContext));
     }
 
-    private static boolean matchesAllFilters(JcrPackage jcrPackage, List<FilterOption> filterOptions, String userID,
-            JobManager jobManager) {
-        return filterOptions == null ||
-                filterOptions.stream().allMatch(filterOption -> filterOption.matches(jcrPackage, userID, jobManager));
+    private static long getPageNumber(FindPackagesRestModel model, PackageSorter sorter) {
+        String packagePath = model.getPath();
+        if (StringUtils.isNotBlank(packagePath)) {
+            int packagePosition = sorter.positionOf(packagePath);
+            if (packagePosition > -1) {
+                return PackageFinder.getNumberOfPages(packagePosition + 1L);
+            }
+        }
+        return model.getPageNumber();
     }
 
-    private static long getPageNumber(FindPackagesRestModel model, List<JcrPackage> filteredPackages) {
+    private static long getPageNumber(FindPackagesRestModel model, List<PackageDefinition> filteredPackages) {
         long pageNumber = model.getPageNumber();
         String packagePath = model.getPath();
         if (StringUtils.isNotBlank(packagePath)) {
@@ -218,22 +366,35 @@ public class FindPackagesRestAction extends AbstractRestAction<FindPackagesRestM
         return pageNumber;
     }
 
-    private List<PackageDto> getPackagesForRequestedPage(List<JcrPackage> packages, Session session, long offset) {
-        List<PackageDto> packagesDtos = packages.stream()
-                .skip(offset)
-                .limit(PACKAGES_PER_PAGE)
-                .map(jcrPackage -> PackageDto.wrapWithoutJobsData(jcrPackage, session))
-                .collect(toList());
+    private List<PackageDto> getPackagesForRequestedPage(List<PackageDefinition> pagePackages, JcrPackageManager packageManager,
+            Session session, Set<PackageField> fields) {
+        List<PackageDto> packagesDtos = new ArrayList<>();
+        for (PackageDefinition definition : pagePackages) {
+            JcrPackage jcrPackage = openPackage(packageManager, session, definition.getPath());
+            try {
+                if (jcrPackage != null) {
+                    packagesDtos.add(PackageDto.wrapWithoutJobsData(jcrPackage, dependencyIndex, fields));
+                }
+            } finally {
+                JcrPackageUtil.close(jcrPackage);
+            }
+        }
         String[] packagesPaths = packagesDtos.stream().map(PackageDto::getPath).toArray(String[]::new);
-        Map<String, ScheduledJobInfo> nextExecutionDateByPath = JobUtil.getNearestScheduledJobs(jobManager, packagesPaths);
-        Map<String, PackageActionDto> packagesActionsByPath = PackageActionDto.forPackagePaths(jobManager, session, packagesPaths);
-        for (PackageDto packageDto : packagesDtos) {
-            String packagePath = packageDto.getPath();
-            ScheduledJobInfo nextSchedule = nextExecutionDateByPath.get(packagePath);
-            if (nextSchedule != null) {
-                packageDto.setNextScheduledAction(PackageScheduleActionInfoDto.asBasicInfo(nextSchedule));
+        if (fields.contains(PackageField.NEXT_SCHEDULED_ACTION)) {
+            Map<String, ScheduledJobInfo> nextExecutionDateByPath = jobRegistry.getNearestScheduledJobs(packagesPaths);
+            for (PackageDto packageDto : packagesDtos) {
+                ScheduledJobInfo nextSchedule = nextExecutionDateByPath.get(packageDto.getPath());
+                if (nextSchedule != null) {
+                    packageDto.setNextScheduledAction(PackageScheduleActionInfoDto.asBasicInfo(nextSchedule));
+                }
+            }
+        }
+        if (fields.contains(PackageField.LAST_ACTION)) {
+            Map<String, PackageActionDto> packagesActionsByPath = PackageActionDto.forReadablePackagePaths(jobRegistry, session,
+                    packagesPaths);
+            for (PackageDto packageDto : packagesDtos) {
+                packageDto.setLastAction(packagesActionsByPath.getOrDefault(packageDto.getPath(), PackageActionDto.UNKNOWN));
             }
-            packageDto.setLastAction(packagesActionsByPath.getOrDefault(packagePath, PackageActionDto.UNKNOWN));
         }
         return packagesDtos;
     }
@@ -6,14 +6,18 @@ import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.models.annotations.Default;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.Self;
+import pl.ds.websight.packagemanager.PackageCursor;
 import pl.ds.websight.packagemanager.rest.requestparameters.FilterOption;
+import pl.ds.websight.packagemanager.rest.requestparameters.PackageField;
 import pl.ds.websight.packagemanager.rest.requestparameters.SortBy;
 import pl.ds.websight.request.parameters.support.annotations.RequestParameter;
 
 import javax.annotation.PostConstruct;
 import javax.jcr.Session;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 @Model(adaptables = SlingHttpServletRequest.class)
 public class FindPackagesRestModel {
@@ -37,17 +41,32 @@ public class FindPackagesRestModel {
     @Default(longValues = 1L)
     private Long pageNumber;
 
+    @RequestParameter(name = "cursor")
+    private String encodedCursor;
+
+    @RequestParameter
+    private List<PackageField> fields;
+
     @Self
     private SlingHttpServletRequest request;
 
     private Session session;
 
+    private PackageCursor cursor;
+
+    private Set<PackageField> packageFields;
+
     @PostConstruct
     protected void init() {
         session = request.getResourceResolver().adaptTo(Session.class);
         sortBy = ObjectUtils.defaultIfNull(sortBy, SortBy.LAST_USED_DESC);
         filterOptions = ObjectUtils.defaultIfNull(filterOptions, Collections.emptyList());
         packageNameFilter = StringUtils.defaultString(packageNameFilter, "");
+        cursor = PackageCursor.decode(encodedCursor);
+        if (cursor != null && cursor.getSortBy() != sortBy) {
+            cursor = null;
+        }
+        packageFields = fields == null || fields.isEmpty() ? EnumSet.allOf(PackageField.class) : EnumSet.copyOf(fields);
     }
 
     public SortBy getSortBy() {
@@ -78,6 +97,14 @@ public class FindPackagesRestModel {
         return getSession().getUserID();
     }
 
+    public PackageCursor getCursor() {
+        return cursor;
+    }
+
+    public Set<PackageField> getPackageFields() {
+        return packageFields;
+    }
+
     public Long getPageNumber() {
         return pageNumber >= 0 ? pageNumber : 0;
     }
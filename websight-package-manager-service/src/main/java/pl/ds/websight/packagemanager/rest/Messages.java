@@ -41,6 +41,26 @@ public class Messages {
     // Get package action full log:
     public static final String GET_PACKAGE_LOG_ERROR_NO_USER_SESSION = "Could not access user's session";
     public static final String GET_PACKAGE_LOG_ERROR_NO_LOGS_DETAILS = "Could not get or access package action logs for package '%s'";
+    public static final String LOG_LINE_NUMBER_VALIDATION_ERROR_NEGATIVE = "Line number cannot be negative";
+    public static final String GET_PACKAGE_LOG_ERROR_RANGE_NOT_SATISFIABLE = "Requested range of package action log is not satisfiable";
+
+    // Get package thumbnail:
+    public static final String GET_PACKAGE_THUMBNAIL_ERROR = "Could not get package thumbnail";
+    public static final String GET_PACKAGE_THUMBNAIL_ERROR_INVALID_PATH = "Invalid package thumbnail path";
+    public static final String GET_PACKAGE_THUMBNAIL_ERROR_NO_USER_SESSION = "Could not access user's session";
+    public static final String GET_PACKAGE_THUMBNAIL_ERROR_NO_THUMBNAIL_DETAILS = "Could not get or access package thumbnail '%s'";
+
+    // Export packages:
+    public static final String EXPORT_PACKAGES_ERROR = "Could not export packages";
+    public static final String EXPORT_PACKAGES_ERROR_NO_USER_SESSION = "Could not access user's session";
+
+    // Get package action events:
+    public static final String GET_PACKAGE_ACTION_EVENTS_ERROR_NO_PATHS = "Packages paths cannot be empty";
+    public static final String GET_PACKAGE_ACTION_EVENTS_ERROR_NO_USER_SESSION = "Could not access user's session";
+
+    // Get package log events:
+    public static final String GET_PACKAGE_LOG_EVENTS_ERROR_NO_USER_SESSION = "Could not access user's session";
+    public static final String GET_PACKAGE_LOG_EVENTS_ERROR_NO_PACKAGE_DETAILS = "Could not get or access package '%s'";
 
     // Get package actions:
     public static final String GET_PACKAGE_ACTION_ERROR = "Could not get package action state";
@@ -1,35 +1,49 @@
 package pl.ds.websight.packagemanager.rest;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
 import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
+import org.apache.jackrabbit.vault.packaging.PackageId;
 import org.apache.jackrabbit.vault.util.JcrConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.util.JcrPackageUtil;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import java.util.Calendar;
-import java.util.Objects;
-import java.util.stream.Stream;
 
 public class PackageDefinition {
 
     private static final Logger LOG = LoggerFactory.getLogger(PackageDefinition.class);
 
-    private final Node packageNode;
+    private static final String SNAPSHOT_GROUP = ".snapshot";
+
+    private String path;
+    private String parentPath;
     private Calendar created;
     private Calendar lastModified;
     private Calendar lastUnpacked;
     private Calendar lastUnwrapped;
     private Calendar lastWrapped;
     private String name;
+    private String createdBy;
+    private long size = -1;
+    private long buildCount;
+    private PackageId packageId;
+    private String snapshotPath;
 
     public PackageDefinition(Node packageNode) {
-        this.packageNode = packageNode;
         try {
+            path = packageNode.getPath();
+            parentPath = StringUtils.substringBeforeLast(path, "/");
             name = packageNode.getName();
+            createdBy = getStringProperty(packageNode, JcrConstants.JCR_CREATED_BY);
             if (packageNode.hasNode(JcrConstants.JCR_CONTENT)) {
                 Node content = packageNode.getNode(JcrConstants.JCR_CONTENT);
+                if (content.hasProperty(JcrConstants.JCR_DATA)) {
+                    size = content.getProperty(JcrConstants.JCR_DATA).getLength();
+                }
                 if (content.hasNode(JcrPackage.NN_VLT_DEFINITION)) {
                     Node definition = content.getNode(JcrPackage.NN_VLT_DEFINITION);
                     created = getCalendarProperty(definition, JcrConstants.JCR_CREATED);
@@ -37,6 +51,11 @@ public class PackageDefinition {
                     lastUnpacked = getCalendarProperty(definition, JcrPackageDefinition.PN_LAST_UNPACKED);
                     lastUnwrapped = getCalendarProperty(definition, JcrPackageDefinition.PN_LAST_UNWRAPPED);
                     lastWrapped = getCalendarProperty(definition, JcrPackageDefinition.PN_LAST_WRAPPED);
+                    if (definition.hasProperty(JcrPackageDefinition.PN_BUILD_COUNT)) {
+                        buildCount = definition.getProperty(JcrPackageDefinition.PN_BUILD_COUNT).getLong();
+                    }
+                    packageId = readPackageId(definition);
+                    snapshotPath = packageId != null ? getSnapshotPath(packageId) : null;
                 }
             }
         } catch (RepositoryException e) {
@@ -44,6 +63,36 @@ public class PackageDefinition {
         }
     }
 
+    private PackageId readPackageId(Node definition) throws RepositoryException {
+        String packageName = getStringProperty(definition, JcrPackageDefinition.PN_NAME);
+        if (StringUtils.isEmpty(packageName)) {
+            return null;
+        }
+        String group = StringUtils.defaultString(getStringProperty(definition, JcrPackageDefinition.PN_GROUP));
+        String version = StringUtils.defaultString(getStringProperty(definition, JcrPackageDefinition.PN_VERSION));
+        return new PackageId(group, packageName, version);
+    }
+
+    // Snapshots are kept in .snapshot group nested in group of package, named the same way as packages without extension
+    private static String getSnapshotPath(PackageId packageId) {
+        StringBuilder snapshotPath = new StringBuilder(JcrPackageUtil.PACKAGES_ROOT_PATH);
+        if (!packageId.getGroup().isEmpty()) {
+            snapshotPath.append(packageId.getGroup()).append('/');
+        }
+        snapshotPath.append(SNAPSHOT_GROUP).append('/').append(packageId.getName());
+        if (!packageId.getVersionString().isEmpty()) {
+            snapshotPath.append('-').append(packageId.getVersionString());
+        }
+        return snapshotPath.toString();
+    }
+
+    private String getStringProperty(Node node, String name) throws RepositoryException {
+        if (node.hasProperty(name)) {
+            return node.getProperty(name).getString();
+        }
+        return null;
+    }
+
     private Calendar getCalendarProperty(Node node, String name) throws RepositoryException {
         if (node.hasProperty(name)) {
             return node.getProperty(name).getDate();
@@ -67,15 +116,49 @@ public class PackageDefinition {
         return name;
     }
 
-    public Node getPackageNode() {
-        return packageNode;
+    public String getPath() {
+        return path;
+    }
+
+    public String getParentPath() {
+        return parentPath;
+    }
+
+    public Calendar getCreated() {
+        return created;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getBuildCount() {
+        return buildCount;
+    }
+
+    public PackageId getPackageId() {
+        return packageId;
+    }
+
+    /**
+     * Returns installation path of package snapshot created on install, without extension.
+     */
+    public String getSnapshotPath() {
+        return snapshotPath;
     }
 
     public Calendar getLatestActionDate() {
-        return Stream.of(created, lastModified, lastUnpacked, lastUnwrapped, lastWrapped)
-                .filter(Objects::nonNull)
-                .max(Calendar::compareTo)
-                .orElse(null);
+        Calendar latestActionDate = null;
+        for (Calendar date : new Calendar[] { created, lastModified, lastUnpacked, lastUnwrapped, lastWrapped }) {
+            if (date != null && (latestActionDate == null || date.compareTo(latestActionDate) > 0)) {
+                latestActionDate = date;
+            }
+        }
+        return latestActionDate;
     }
 
 }
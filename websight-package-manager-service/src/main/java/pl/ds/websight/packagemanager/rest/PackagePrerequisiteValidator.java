@@ -3,25 +3,37 @@ package pl.ds.websight.packagemanager.rest;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import pl.ds.websight.packagemanager.catalog.PackageDependencyIndex;
 
+import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
 
 public class PackagePrerequisiteValidator {
 
-    private final Predicate<JcrPackage> prerequisite;
+    private final BiPredicate<JcrPackage, PackageDependencyIndex> prerequisite;
     private final String simpleMessage;
     private final UnaryOperator<String> extendedMessageGenerator;
 
     public PackagePrerequisiteValidator(Predicate<JcrPackage> prerequisite, String simpleMessage,
             UnaryOperator<String> extendedMessageGenerator) {
+        this((jcrPackage, dependencyIndex) -> prerequisite.test(jcrPackage), simpleMessage, extendedMessageGenerator);
+    }
+
+    private PackagePrerequisiteValidator(BiPredicate<JcrPackage, PackageDependencyIndex> prerequisite, String simpleMessage,
+            UnaryOperator<String> extendedMessageGenerator) {
         this.prerequisite = prerequisite;
         this.simpleMessage = simpleMessage;
         this.extendedMessageGenerator = extendedMessageGenerator;
     }
 
-    public boolean failPrerequisite(JcrPackage jcrPackage) {
-        return !prerequisite.test(jcrPackage);
+    public static PackagePrerequisiteValidator withDependencyIndex(BiPredicate<JcrPackage, PackageDependencyIndex> prerequisite,
+            String simpleMessage, UnaryOperator<String> extendedMessageGenerator) {
+        return new PackagePrerequisiteValidator(prerequisite, simpleMessage, extendedMessageGenerator);
+    }
+
+    public boolean failPrerequisite(JcrPackage jcrPackage, PackageDependencyIndex dependencyIndex) {
+        return !prerequisite.test(jcrPackage, dependencyIndex);
     }
 
     public String getSimpleMessage() {
@@ -33,10 +45,10 @@ public class PackagePrerequisiteValidator {
     }
 
     public static Pair<String, String> getValidationResult(PackagePrerequisiteValidator[] validators, JcrPackage packageToValidate,
-            String packagePath) {
+            String packagePath, PackageDependencyIndex dependencyIndex) {
         if (validators != null) {
             for (PackagePrerequisiteValidator validator : validators) {
-                if (validator.failPrerequisite(packageToValidate)) {
+                if (validator.failPrerequisite(packageToValidate, dependencyIndex)) {
                     return ImmutablePair.of(validator.getSimpleMessage(), validator.getExtendedMessage(packagePath));
                 }
             }
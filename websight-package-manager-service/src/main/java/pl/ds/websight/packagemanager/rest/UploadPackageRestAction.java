@@ -3,6 +3,7 @@ package pl.ds.websight.packagemanager.rest;
 import org.apache.jackrabbit.vault.packaging.Packaging;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
 import pl.ds.websight.packagemanager.dto.PackageUploadDto;
 import pl.ds.websight.rest.framework.RestAction;
 import pl.ds.websight.rest.framework.RestActionResult;
@@ -26,6 +27,12 @@ public class UploadPackageRestAction extends AbstractUploadableRestAction {
         super.packaging = packaging;
     }
 
+    @Override
+    @Reference
+    protected void setPackageCatalog(PackageCatalog packageCatalog) {
+        super.packageCatalog = packageCatalog;
+    }
+
     @Override
     protected String getUnexpectedErrorMessage() {
         return Messages.UPLOAD_PACKAGE_ERROR;
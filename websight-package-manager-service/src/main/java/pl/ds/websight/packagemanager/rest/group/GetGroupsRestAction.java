@@ -1,17 +1,24 @@
 package pl.ds.websight.packagemanager.rest.group;
 
-import org.jetbrains.annotations.NotNull;
+import org.apache.commons.lang3.StringUtils;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.AttributeType;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+import pl.ds.websight.packagemanager.catalog.PackageDiscovery;
+import pl.ds.websight.packagemanager.catalog.PackageDiscoveryMode;
+import pl.ds.websight.packagemanager.catalog.ParallelPackageTraversal;
 import pl.ds.websight.packagemanager.dto.GroupDto;
 import pl.ds.websight.packagemanager.dto.GroupListDto;
 import pl.ds.websight.packagemanager.rest.AbstractRestAction;
 import pl.ds.websight.packagemanager.rest.Messages;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
 import pl.ds.websight.packagemanager.util.JcrPackageUtil;
+import pl.ds.websight.packagemanager.util.PackageQueryUtil;
 import pl.ds.websight.rest.framework.RestAction;
 import pl.ds.websight.rest.framework.RestActionResult;
 import pl.ds.websight.rest.framework.annotations.SlingAction;
@@ -21,8 +28,12 @@ import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static pl.ds.websight.rest.framework.annotations.SlingAction.HttpMethod.GET;
 
@@ -32,53 +43,134 @@ import static pl.ds.websight.rest.framework.annotations.SlingAction.HttpMethod.G
 public class GetGroupsRestAction extends AbstractRestAction<GetGroupsRestModel, GroupListDto>
         implements RestAction<GetGroupsRestModel, GroupListDto> {
 
+    @Reference
+    private PackageCatalog packageCatalog;
+
+    private static final int MAX_CACHED_USERS = 100;
+
+    @Reference
+    private ParallelPackageTraversal parallelTraversal;
+
+    @Reference
+    private PackageDiscovery packageDiscovery;
+
     private Config config;
 
+    // Group lists of recently active users, packages visible to them depend on their permissions
+    private final Map<String, CachedGroupList> cachedGroupLists = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedGroupList>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedGroupList> eldest) {
+                    return size() > MAX_CACHED_USERS;
+                }
+            });
+
     //This implementation doesn't handle case when package is provided by some PackageRegistry
     @Override
     protected RestActionResult<GroupListDto> performAction(GetGroupsRestModel model) throws RepositoryException {
-        return RestActionResult.success(listGroups(model.getSession(), config.count_limit()));
+        Session session = model.getSession();
+        PackageDiscoveryMode discoveryMode = packageDiscovery.getMode();
+        if (discoveryMode == PackageDiscoveryMode.QUERY) {
+            // Query results follow asynchronous index, so they can't be cached until the next observation event
+            return RestActionResult.success(listGroups(session, discoveryMode));
+        }
+        long revision = packageCatalog.getRevision();
+        CachedGroupList cachedGroupList = cachedGroupLists.get(session.getUserID());
+        if (cachedGroupList != null && cachedGroupList.revision == revision) {
+            return RestActionResult.success(cachedGroupList.groupList);
+        }
+        GroupListDto groupList = listGroups(session, discoveryMode);
+        cachedGroupLists.put(session.getUserID(), new CachedGroupList(revision, groupList));
+        return RestActionResult.success(groupList);
+    }
+
+    private GroupListDto listGroups(Session session, PackageDiscoveryMode discoveryMode) throws RepositoryException {
+        if (discoveryMode != PackageDiscoveryMode.TRAVERSAL) {
+            if (!session.nodeExists(JcrPackageUtil.PACKAGES_ROOT_PATH)) {
+                return new GroupListDto(0, config.count_limit(), new ArrayList<>());
+            }
+            List<PackageDefinition> packages;
+            if (discoveryMode == PackageDiscoveryMode.CATALOG) {
+                packages = packageCatalog.findPackages(session, JcrPackageUtil.PACKAGES_ROOT_PATH, true);
+            } else if (discoveryMode == PackageDiscoveryMode.QUERY) {
+                packages = PackageQueryUtil.findPackages(session, JcrPackageUtil.PACKAGES_ROOT_PATH, true, null);
+            } else {
+                packages = parallelTraversal.findPackages(session, JcrPackageUtil.PACKAGES_ROOT_PATH, true);
+            }
+            return listGroups(packages, config.count_limit());
+        }
+        return listGroups(session, config.count_limit());
+    }
+
+    private static GroupListDto listGroups(List<PackageDefinition> packages, int limit) {
+        String packagesRootPath = StringUtils.removeEnd(JcrPackageUtil.PACKAGES_ROOT_PATH, "/");
+        long noGroupPackagesCount = 0;
+        Map<String, Long> packagesCountByGroup = new HashMap<>();
+        for (PackageDefinition definition : packages) {
+            String groupPath = definition.getParentPath();
+            if (packagesRootPath.equals(groupPath)) {
+                noGroupPackagesCount++;
+            }
+            // Package is counted in its group and in all ancestor groups, as when counting recursively
+            while (groupPath.startsWith(JcrPackageUtil.PACKAGES_ROOT_PATH)) {
+                packagesCountByGroup.merge(groupPath.substring(JcrPackageUtil.PACKAGES_ROOT_PATH.length()), 1L, Long::sum);
+                groupPath = StringUtils.substringBeforeLast(groupPath, "/");
+            }
+        }
+        List<GroupDto> result = new ArrayList<>();
+        addGroup(result, JcrPackageUtil.NO_GROUP, noGroupPackagesCount, limit);
+        packagesCountByGroup.forEach((groupName, packagesCount) -> addGroup(result, groupName, packagesCount, limit));
+        result.sort(Comparator.comparing(GroupDto::getName, String::compareToIgnoreCase));
+        return new GroupListDto(packages.size(), limit, result);
     }
 
     private static GroupListDto listGroups(Session session, int limit) throws RepositoryException {
         long allPackagesCount = 0;
         List<GroupDto> result = new ArrayList<>();
         if (session.nodeExists(JcrPackageUtil.PACKAGES_ROOT_PATH)) {
-            // Packages without group assigned
-            Node packageRoot = session.getNode(JcrPackageUtil.PACKAGES_ROOT_PATH);
-            long noGroupPackagesCount = JcrPackageUtil.countPackages(packageRoot, limit, false);
-            addGroup(result, JcrPackageUtil.NO_GROUP, noGroupPackagesCount, limit);
-            allPackagesCount += noGroupPackagesCount;
-
-            // Packages with group assigned
-            final boolean countPackagesRecursively = true;
-            for (Node group : getChildGroups(packageRoot)) {
-                String groupName = JcrPackageUtil.getGroupIdFromNode(packageRoot, group);
-                long packagesCount = JcrPackageUtil.countPackages(group, limit, countPackagesRecursively);
-                addGroup(result, groupName, packagesCount, limit);
-                if (!groupName.contains("/")) {
-                    // Add only top level groups counts when done recursively
-                    allPackagesCount += packagesCount;
+            Map<String, Long> packagesCountByGroup = new HashMap<>();
+            long noGroupPackagesCount = 0;
+            NodeIterator nodeIterator = session.getNode(JcrPackageUtil.PACKAGES_ROOT_PATH).getNodes();
+            while (nodeIterator.hasNext()) {
+                Node child = nodeIterator.nextNode();
+                if (".snapshot".equals(child.getName())) {
+                    continue;
+                }
+                if (JcrPackageUtil.isValidPackageNode(child)) {
+                    // Packages without group assigned
+                    noGroupPackagesCount++;
+                } else {
+                    // Top level groups counts include packages of nested groups
+                    allPackagesCount += countGroupPackages(child, child.getName(), packagesCountByGroup, limit);
                 }
             }
+            allPackagesCount += noGroupPackagesCount;
+            addGroup(result, JcrPackageUtil.NO_GROUP, noGroupPackagesCount, limit);
+            packagesCountByGroup.forEach((groupName, packagesCount) -> addGroup(result, groupName, packagesCount, limit));
             result.sort(Comparator.comparing(GroupDto::getName, String::compareToIgnoreCase));
         }
         return new GroupListDto(allPackagesCount, limit, result);
     }
 
-    @NotNull
-    private static List<Node> getChildGroups(Node root) throws RepositoryException {
-        List<Node> result = new ArrayList<>();
-        NodeIterator nodeIterator = root.getNodes();
-        while (nodeIterator.hasNext()) {
+    // Group is not walked further once its count exceeds limit, like when groups were counted one by one
+    private static long countGroupPackages(Node group, String groupName, Map<String, Long> packagesCountByGroup, long limit)
+            throws RepositoryException {
+        long packagesCount = 0;
+        NodeIterator nodeIterator = group.getNodes();
+        while (nodeIterator.hasNext() && packagesCount <= limit) {
             Node child = nodeIterator.nextNode();
             String name = child.getName();
-            if (!".snapshot".equals(name) && !JcrPackageUtil.isValidPackageNode(child)) {
-                result.add(child);
-                result.addAll(getChildGroups(child));
+            if (".snapshot".equals(name)) {
+                continue;
+            }
+            if (JcrPackageUtil.isValidPackageNode(child)) {
+                packagesCount++;
+            } else {
+                packagesCount += countGroupPackages(child, groupName + '/' + name, packagesCountByGroup, limit);
             }
         }
-        return result;
+        packagesCountByGroup.put(groupName, packagesCount);
+        return packagesCount;
     }
 
     private static void addGroup(List<GroupDto> groups, String groupName, long packagesCount, long limit) {
@@ -95,6 +187,18 @@ public class GetGroupsRestAction extends AbstractRestAction<GetGroupsRestModel,
     @Activate
     private void activate(Config config) {
         this.config = config;
+        cachedGroupLists.clear();
+    }
+
+    private static class CachedGroupList {
+
+        private final long revision;
+        private final GroupListDto groupList;
+
+        private CachedGroupList(long revision, GroupListDto groupList) {
+            this.revision = revision;
+            this.groupList = groupList;
+        }
     }
 
     @ObjectClassDefinition(name = "WebSight Package Manager: Get Groups Rest Action Configuration")
@@ -6,6 +6,7 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
 import pl.ds.websight.packagemanager.packageaction.PackageActionJobProperties;
 import pl.ds.websight.packagemanager.rest.AbstractRestAction;
 import pl.ds.websight.packagemanager.rest.Messages;
@@ -28,6 +29,9 @@ public class CancelPackageActionRestAction extends AbstractRestAction<PackageAct
     @Reference
     private JobManager jobManager;
 
+    @Reference
+    private PackageCatalog packageCatalog;
+
     @Override
     protected RestActionResult<Void> performAction(PackageActionRestModel model) {
         String packagePath = model.getPath();
@@ -51,6 +55,7 @@ public class CancelPackageActionRestAction extends AbstractRestAction<PackageAct
                         Messages.formatMessage(Messages.CANCEL_PACKAGE_ACTION_ERROR_UNSUCCESSFUL_DELETE_DETAILS,
                                 formattedActionTitle.toLowerCase(JcrPackageUtil.DEFAULT_LOCALE), packagePath));
             }
+            packageCatalog.increaseRevision();
         }
         String formattedLastActionTitle = getFormattedActionTitle(lastQueuedJob);
         // Please bear in mind, that deleting a job doesn't mean the processing of consumer/handler is stopped when job is active.
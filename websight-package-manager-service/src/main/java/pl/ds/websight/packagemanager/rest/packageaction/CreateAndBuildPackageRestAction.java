@@ -1,11 +1,12 @@
 package pl.ds.websight.packagemanager.rest.packageaction;
 
 import org.apache.jackrabbit.vault.packaging.Packaging;
-import org.apache.sling.event.jobs.JobManager;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.dto.PackageDto;
 import pl.ds.websight.packagemanager.rest.AbstractCreatableRestAction;
 import pl.ds.websight.packagemanager.rest.PackagePathSaveHelper;
@@ -47,7 +48,13 @@ public class CreateAndBuildPackageRestAction extends AbstractCreatableRestAction
 
     @Override
     @Reference
-    protected void setJobManager(JobManager jobManager) {
-        super.jobManager = jobManager;
+    protected void setJobRegistry(PackageJobRegistry jobRegistry) {
+        super.jobRegistry = jobRegistry;
+    }
+
+    @Override
+    @Reference
+    protected void setPackageCatalog(PackageCatalog packageCatalog) {
+        super.packageCatalog = packageCatalog;
     }
 }
@@ -1,9 +1,9 @@
 package pl.ds.websight.packagemanager.rest.packageaction;
 
 import org.apache.sling.api.resource.ResourceResolverFactory;
-import org.apache.sling.event.jobs.JobManager;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.dto.PackageActionDto;
 import pl.ds.websight.packagemanager.dto.PackageActionReportDto;
 import pl.ds.websight.packagemanager.dto.PackageActionStateDto;
@@ -26,7 +26,7 @@ public class GetPackageActionReportRestAction extends AbstractRestAction<GetPack
         implements RestAction<GetPackageActionReportRestModel, PackageActionReportDto> {
 
     @Reference
-    private JobManager jobManager;
+    private PackageJobRegistry jobRegistry;
 
     @Reference
     private ResourceResolverFactory resolverFactory;
@@ -36,7 +36,7 @@ public class GetPackageActionReportRestAction extends AbstractRestAction<GetPack
         String packagePath = model.getPath();
         Session session = model.getSession();
         String logPath = PackageLogUtil.getLogPath(packagePath);
-        PackageActionDto action = PackageActionDto.forPackagePath(jobManager, session, packagePath);
+        PackageActionDto action = PackageActionDto.forPackagePath(jobRegistry, session, packagePath);
         PackageActionStateDto actionState = action.getState();
         if (PackageActionStateDto.UNKNOWN.equals(actionState)) {
             return (!session.nodeExists(packagePath) || !session.nodeExists(logPath)) ?
@@ -45,7 +45,14 @@ public class GetPackageActionReportRestAction extends AbstractRestAction<GetPack
                     RestActionResult.success(new PackageActionReportDto(action));
         }
         Node logNode = session.getNode(logPath);
-        return RestActionResult.success(new PackageActionReportDto(action, PackageLogUtil.getLog(logNode, false)));
+        String logId = PackageLogUtil.getLogId(logNode);
+        PackageLogUtil.LogLines logLines = model.getSince() != null && PackageLogUtil.isFollowedLog(model.getLogId(), logId) ?
+                PackageLogUtil.getLogSince(logNode, model.getSince()) :
+                null;
+        if (logLines == null) {
+            logLines = PackageLogUtil.getLogTail(logNode);
+        }
+        return RestActionResult.success(new PackageActionReportDto(action, logLines.getLines(), logLines.getStart(), logId));
     }
 
     @Override
@@ -4,13 +4,16 @@ import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.SlingObject;
+import pl.ds.websight.packagemanager.rest.Messages;
 import pl.ds.websight.packagemanager.rest.PackagePathValidatable;
 import pl.ds.websight.request.parameters.support.annotations.RequestParameter;
+import pl.ds.websight.rest.framework.Errors;
 
 import javax.jcr.Session;
 import javax.validation.constraints.NotBlank;
 
 import static pl.ds.websight.packagemanager.rest.Messages.PACKAGE_PATH_VALIDATION_ERROR_BLANK_PATH;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.SINCE_PARAM_NAME;
 
 @Model(adaptables = SlingHttpServletRequest.class)
 public class GetPackageActionReportRestModel extends PackagePathValidatable {
@@ -22,6 +25,12 @@ public class GetPackageActionReportRestModel extends PackagePathValidatable {
     @NotBlank(message = PACKAGE_PATH_VALIDATION_ERROR_BLANK_PATH)
     private String path;
 
+    @RequestParameter
+    private Long since;
+
+    @RequestParameter
+    private String logId;
+
     public Session getSession() {
         return resolver.adaptTo(Session.class);
     }
@@ -30,4 +39,20 @@ public class GetPackageActionReportRestModel extends PackagePathValidatable {
     public String getPath() {
         return path;
     }
+
+    public Long getSince() {
+        return since;
+    }
+
+    public String getLogId() {
+        return logId;
+    }
+
+    @Override
+    public Errors validate() {
+        Errors errors = super.validate();
+        return since != null && since < 0 ?
+                errors.add(SINCE_PARAM_NAME, since, Messages.LOG_LINE_NUMBER_VALIDATION_ERROR_NEGATIVE) :
+                errors;
+    }
 }
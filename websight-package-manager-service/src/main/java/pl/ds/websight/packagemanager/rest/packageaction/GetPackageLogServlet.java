@@ -1,5 +1,6 @@
 package pl.ds.websight.packagemanager.rest.packageaction;
 
+import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.request.RequestParameter;
@@ -11,6 +12,7 @@ import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.ds.websight.packagemanager.rest.Messages;
+import pl.ds.websight.packagemanager.util.ChunkedLogUtil;
 import pl.ds.websight.packagemanager.util.JcrPackageUtil;
 import pl.ds.websight.packagemanager.util.PackageLogUtil;
 
@@ -19,16 +21,21 @@ import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.servlet.Servlet;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.util.Enumeration;
 
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
+import static javax.servlet.http.HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
 import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_EXTENSIONS;
 import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_METHODS;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.LOG_ID_PARAM_NAME;
 import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.PACKAGE_PATH_PARAM_NAME;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.SINCE_PARAM_NAME;
 
 @Component(
         service = Servlet.class,
@@ -44,11 +51,16 @@ public class GetPackageLogServlet extends SlingSafeMethodsServlet {
 
     static final String ACTION_LOG_EXTENSION = "log";
 
+    private static final String LOG_START_HEADER = "X-Log-Start";
+    private static final String LOG_ID_HEADER = "X-Log-Id";
+    private static final String GZIP_ENCODING = "gzip";
+    private static final String BYTES_RANGE_UNIT = "bytes=";
+
     @Override
     protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
         response.setContentType("text/plain");
         response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
-        response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        response.setHeader("Cache-Control", "no-cache, must-revalidate");
         response.setHeader("Pragma", "no-cache");
         response.setHeader("Expires", "0");
 
@@ -62,10 +74,15 @@ public class GetPackageLogServlet extends SlingSafeMethodsServlet {
             response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.GET_PACKAGE_LOG_ERROR_NO_USER_SESSION);
             return;
         }
+        long since = getSince(request);
+        if (since < 0) {
+            response.sendError(SC_BAD_REQUEST, Messages.LOG_LINE_NUMBER_VALIDATION_ERROR_NEGATIVE);
+            return;
+        }
         String logPath = PackageLogUtil.getLogPath(packagePath);
         try {
             if (session.nodeExists(packagePath) && session.nodeExists(logPath)) {
-                printLogs(response, logPath, session);
+                printLogs(request, response, logPath, session, since);
             } else {
                 response.sendError(SC_NOT_FOUND, Messages.formatMessage(Messages.GET_PACKAGE_LOG_ERROR_NO_LOGS_DETAILS, packagePath));
             }
@@ -89,12 +106,116 @@ public class GetPackageLogServlet extends SlingSafeMethodsServlet {
         return null;
     }
 
-    private static void printLogs(SlingHttpServletResponse response, String logPath, Session session)
-            throws RepositoryException, IOException {
+    private static long getSince(SlingHttpServletRequest request) {
+        RequestParameter sinceParam = request.getRequestParameter(SINCE_PARAM_NAME);
+        return sinceParam != null ? NumberUtils.toLong(sinceParam.getString(), -1L) : 0L;
+    }
+
+    private static void printLogs(SlingHttpServletRequest request, SlingHttpServletResponse response, String logPath, Session session,
+            long since) throws RepositoryException, IOException {
         Node logNode = session.getNode(logPath);
-        List<String> fullLog = PackageLogUtil.getLog(logNode, true);
-        try (PrintWriter writer = response.getWriter()) {
-            fullLog.forEach(writer::append);
+        String logId = PackageLogUtil.getLogId(logNode);
+        boolean followedLog = PackageLogUtil.isFollowedLog(request.getParameter(LOG_ID_PARAM_NAME), logId);
+        PackageLogUtil.LogLines logLines = followedLog && since > 0 ? PackageLogUtil.getLogSince(logNode, since) : null;
+        // Full log is sent when log has less lines than requested number or it is log of other action, start header tells
+        // clients to replace their copy
+        response.setHeader(LOG_START_HEADER, String.valueOf(logLines != null ? logLines.getStart() : 0L));
+        if (logId != null) {
+            response.setHeader(LOG_ID_HEADER, logId);
+        }
+        if (logLines != null) {
+            try (PrintWriter writer = response.getWriter()) {
+                logLines.getLines().forEach(writer::append);
+            }
+        } else if (ChunkedLogUtil.isChunkedLog(logNode)) {
+            printChunkedLog(request, response, logNode);
+        } else {
+            try (PrintWriter writer = response.getWriter()) {
+                PackageLogUtil.writeLog(logNode, writer);
+            }
+        }
+    }
+
+    private static void printChunkedLog(SlingHttpServletRequest request, SlingHttpServletResponse response, Node logNode)
+            throws RepositoryException, IOException {
+        // Byte ranges are served only for chunked logs, which byte offsets are indexed
+        response.setHeader("Accept-Ranges", "bytes");
+        String rangeHeader = request.getHeader("Range");
+        if (rangeHeader != null) {
+            long logLength = ChunkedLogUtil.getLogLength(logNode);
+            long[] range = getRange(rangeHeader, logLength);
+            if (range != null) {
+                printLogRange(response, logNode, range, logLength);
+                return;
+            }
+        }
+        boolean gzipLog = ChunkedLogUtil.isGzipLog(logNode);
+        if (gzipLog) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        if (gzipLog && isGzipAccepted(request)) {
+            response.setHeader("Content-Encoding", GZIP_ENCODING);
+            try (OutputStream outputStream = response.getOutputStream()) {
+                ChunkedLogUtil.writeGzipLog(logNode, outputStream);
+            }
+        } else {
+            try (PrintWriter writer = response.getWriter()) {
+                ChunkedLogUtil.writeLog(logNode, writer);
+            }
+        }
+    }
+
+    private static void printLogRange(SlingHttpServletResponse response, Node logNode, long[] range, long logLength)
+            throws RepositoryException, IOException {
+        if (range[0] >= logLength) {
+            response.setHeader("Content-Range", "bytes */" + logLength);
+            response.sendError(SC_REQUESTED_RANGE_NOT_SATISFIABLE, Messages.GET_PACKAGE_LOG_ERROR_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+        response.setStatus(SC_PARTIAL_CONTENT);
+        response.setHeader("Content-Range", "bytes " + range[0] + '-' + range[1] + '/' + logLength);
+        response.setHeader("Content-Length", String.valueOf(range[1] - range[0] + 1));
+        try (OutputStream outputStream = response.getOutputStream()) {
+            ChunkedLogUtil.writeLogRange(logNode, range[0], range[1], outputStream);
+        }
+    }
+
+    /**
+     * Gets first and last byte of single byte range, first byte is not lower than log length when range is not satisfiable.
+     * Returns {@code null} when header is invalid or contains multiple ranges, so whole log is sent.
+     */
+    private static long[] getRange(String rangeHeader, long logLength) {
+        String trimmedHeader = rangeHeader.trim();
+        if (!trimmedHeader.startsWith(BYTES_RANGE_UNIT) || trimmedHeader.indexOf(',') != -1) {
+            return null;
+        }
+        String rangeSpec = trimmedHeader.substring(BYTES_RANGE_UNIT.length()).trim();
+        int separator = rangeSpec.indexOf('-');
+        if (separator == -1) {
+            return null;
+        }
+        long first = NumberUtils.toLong(rangeSpec.substring(0, separator).trim(), -1L);
+        long last = NumberUtils.toLong(rangeSpec.substring(separator + 1).trim(), -1L);
+        if (separator == 0) {
+            // Suffix range requests last bytes of log
+            return last >= 0 ? new long[]{ last > 0 ? Math.max(0L, logLength - last) : logLength, logLength - 1 } : null;
+        }
+        if (first < 0 || (separator < rangeSpec.length() - 1 && last < first)) {
+            return null;
+        }
+        return new long[]{ first, last >= 0 ? Math.min(last, logLength - 1) : logLength - 1 };
+    }
+
+    private static boolean isGzipAccepted(SlingHttpServletRequest request) {
+        Enumeration<String> acceptEncodings = request.getHeaders("Accept-Encoding");
+        while (acceptEncodings != null && acceptEncodings.hasMoreElements()) {
+            for (String encoding : acceptEncodings.nextElement().split(",")) {
+                String[] encodingParams = encoding.trim().split(";");
+                if (GZIP_ENCODING.equalsIgnoreCase(encodingParams[0].trim())) {
+                    return encodingParams.length == 1 || !encodingParams[1].trim().matches("q=0(\\.0*)?");
+                }
+            }
         }
+        return false;
     }
 }
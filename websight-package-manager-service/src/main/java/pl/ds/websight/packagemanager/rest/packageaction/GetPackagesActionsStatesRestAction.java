@@ -1,8 +1,8 @@
 package pl.ds.websight.packagemanager.rest.packageaction;
 
-import org.apache.sling.event.jobs.JobManager;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.dto.PackageActionDto;
 import pl.ds.websight.packagemanager.rest.AbstractRestAction;
 import pl.ds.websight.packagemanager.rest.Messages;
@@ -21,13 +21,13 @@ public class GetPackagesActionsStatesRestAction extends AbstractRestAction<GetPa
         implements RestAction<GetPackagesActionsStatesRestModel, Map<String, PackageActionDto>> {
 
     @Reference
-    private JobManager jobManager;
+    private PackageJobRegistry jobRegistry;
 
     @Override
     protected RestActionResult<Map<String, PackageActionDto>> performAction(GetPackagesActionsStatesRestModel model)
             throws RepositoryException {
         String[] paths = model.getPaths().toArray(new String[0]);
-        return RestActionResult.success(PackageActionDto.forPackagePaths(jobManager, model.getSession(), paths));
+        return RestActionResult.success(PackageActionDto.forPackagePaths(jobRegistry, model.getSession(), paths));
     }
 
     @Override
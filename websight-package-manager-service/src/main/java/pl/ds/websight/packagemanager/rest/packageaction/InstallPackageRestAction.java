@@ -24,7 +24,7 @@ public class InstallPackageRestAction extends AbstractRestAction<PackageActionRe
                     JcrPackageStatusUtil::isBuilt,
                     "Package was never built",
                     packageToInstallPath -> "Package: " + packageToInstallPath + " was never built"),
-            new PackagePrerequisiteValidator(
+            PackagePrerequisiteValidator.withDependencyIndex(
                     JcrPackageStatusUtil::hasUnresolvedDependencies,
                     "Package has unresolved dependencies",
                     packageToInstallPath -> "Package: " + packageToInstallPath + " has unresolved dependencies")
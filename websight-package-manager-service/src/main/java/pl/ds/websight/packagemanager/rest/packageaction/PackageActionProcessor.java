@@ -11,6 +11,9 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageDependencyIndex;
+import pl.ds.websight.packagemanager.catalog.PackageJob;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.dto.CombinedActionsDto;
 import pl.ds.websight.packagemanager.dto.PackageActionStateDto;
 import pl.ds.websight.packagemanager.packageaction.PackageActionJobProperties;
@@ -19,7 +22,6 @@ import pl.ds.websight.packagemanager.packageoptions.PackageImportOptions;
 import pl.ds.websight.packagemanager.rest.PackagePrerequisiteValidator;
 import pl.ds.websight.packagemanager.rest.requestparameters.PackageActionCommand;
 import pl.ds.websight.packagemanager.util.JcrPackageUtil;
-import pl.ds.websight.packagemanager.util.JobUtil;
 import pl.ds.websight.packagemanager.util.OpenPackageException;
 import pl.ds.websight.rest.framework.RestActionResult;
 
@@ -41,16 +43,21 @@ public class PackageActionProcessor {
     @Reference
     private JobManager jobManager;
 
+    @Reference
+    private PackageDependencyIndex dependencyIndex;
+
+    @Reference
+    private PackageJobRegistry jobRegistry;
+
     public RestActionResult<PackageActionStateDto> process(String packageToProcessPath, PackageImportOptions packageImportOptions,
             Session session, PackageActionCommand command, PackagePrerequisiteValidator... validators) throws RepositoryException {
         try (JcrPackage packageToProcess = JcrPackageUtil.open(packageToProcessPath, session, packaging.getPackageManager(session))) {
             Pair<String, String> validationResult =
-                    PackagePrerequisiteValidator.getValidationResult(validators, packageToProcess, packageToProcessPath);
+                    PackagePrerequisiteValidator.getValidationResult(validators, packageToProcess, packageToProcessPath, dependencyIndex);
             if (!validationResult.equals(ImmutablePair.nullPair())) {
                 return RestActionResult.failure(validationResult.getKey(), validationResult.getValue());
             }
-            Job runningQueuedJob =
-                    JobUtil.findFirstRunningOrQueuedJob(jobManager, PackageActionJobProperties.asQueryMap(packageToProcessPath));
+            PackageJob runningQueuedJob = jobRegistry.getConfirmedJob(packageToProcessPath);
             if (runningQueuedJob != null) {
                 PackageActionCommand actionBlocker = PackageActionCommand.fetchByJobTopic(runningQueuedJob.getTopic());
                 String actionBlockerName = actionBlocker != null ?
@@ -70,6 +77,7 @@ public class PackageActionProcessor {
                         Messages.formatMessage(Messages.PACKAGE_ACTION_ERROR_NOT_QUEUED_DETAILS,
                                 command.getActionTitle().toLowerCase(JcrPackageUtil.DEFAULT_LOCALE)));
             }
+            jobRegistry.register(actionJob);
             LOG.debug("Successfully queued action: {} of package: {}, Id: {}", command, packageToProcessPath, actionJob.getId());
             return RestActionResult.success(
                     Messages.formatMessage(Messages.PACKAGE_ACTION_SUCCESS, command.getActionTitle()),
@@ -5,6 +5,7 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
 import pl.ds.websight.packagemanager.dto.PackageUploadDto;
 import pl.ds.websight.packagemanager.rest.AbstractUploadableRestAction;
 import pl.ds.websight.packagemanager.rest.Messages;
@@ -45,6 +46,12 @@ public class UploadAndInstallPackageRestAction extends AbstractUploadableRestAct
         super.packaging = packaging;
     }
 
+    @Override
+    @Reference
+    protected void setPackageCatalog(PackageCatalog packageCatalog) {
+        super.packageCatalog = packageCatalog;
+    }
+
     @Override
     protected String getUnexpectedErrorMessage() {
         return Messages.UPLOAD_PACKAGE_ERROR;
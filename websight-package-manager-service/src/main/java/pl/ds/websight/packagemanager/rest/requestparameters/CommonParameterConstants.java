@@ -3,6 +3,8 @@ package pl.ds.websight.packagemanager.rest.requestparameters;
 public final class CommonParameterConstants {
 
     public static final String PACKAGE_PATH_PARAM_NAME = "path";
+    public static final String SINCE_PARAM_NAME = "since";
+    public static final String LOG_ID_PARAM_NAME = "logId";
 
     private CommonParameterConstants() {
         // no instance
@@ -0,0 +1,38 @@
+package pl.ds.websight.packagemanager.rest.requestparameters;
+
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
+
+import javax.jcr.Session;
+import java.util.Set;
+
+/**
+ * Data shared by {@link FilterOption}s evaluated within a single request. Scheduled packages are fetched once, on first use.
+ */
+public class FilterContext {
+
+    private final Session session;
+    private final PackageJobRegistry jobRegistry;
+
+    private Set<String> scheduledPackagesPaths;
+
+    public FilterContext(Session session, PackageJobRegistry jobRegistry) {
+        this.session = session;
+        this.jobRegistry = jobRegistry;
+    }
+
+    public Session getSession() {
+        return session;
+    }
+
+    public String getUserId() {
+        return session.getUserID();
+    }
+
+    public boolean isScheduled(String packagePath) {
+        if (scheduledPackagesPaths == null) {
+            scheduledPackagesPaths = jobRegistry.getScheduledPackagesPaths();
+        }
+        return scheduledPackagesPaths.contains(packagePath);
+    }
+
+}
@@ -0,0 +1,27 @@
+package pl.ds.websight.packagemanager.rest.requestparameters;
+
+/**
+ * Optional properties of listed packages, which require additional repository reads or job lookups. Properties read directly
+ * from package definition are always returned.
+ */
+public enum PackageField {
+
+    STATUS("status"),
+    FILTERS("filters"),
+    DEPENDENCIES("dependencies"),
+    AC_HANDLING("acHandling"),
+    THUMBNAIL("thumbnail"),
+    LAST_ACTION("lastAction"),
+    NEXT_SCHEDULED_ACTION("nextScheduledAction");
+
+    private final String paramName;
+
+    PackageField(String paramName) {
+        this.paramName = paramName;
+    }
+
+    @Override
+    public String toString() {
+        return paramName;
+    }
+}
@@ -2,37 +2,70 @@ package pl.ds.websight.packagemanager.rest.requestparameters;
 
 import pl.ds.websight.packagemanager.rest.PackageDefinition;
 
+import java.util.Calendar;
 import java.util.Comparator;
+import java.util.function.Function;
 
 public enum SortBy {
 
-    LAST_USED_DESC("lastUsed", Comparator.comparing(PackageDefinition::getLatestActionDate,
-            Comparator.nullsLast(Comparator.reverseOrder()))),
+    // Latest of several dates can't be expressed as query ordering, packages are sorted after being fetched
+    LAST_USED_DESC("lastUsed", PackageDefinition::getLatestActionDate, null),
 
-    LAST_MODIFIED_DESC("lastModified", Comparator.comparing(PackageDefinition::getLastModified,
-            Comparator.nullsLast(Comparator.reverseOrder()))),
+    LAST_MODIFIED_DESC("lastModified", PackageDefinition::getLastModified, "[jcr:content/vlt:definition/jcr:lastModified] DESC"),
 
-    NAME_ASC("name", Comparator.comparing(PackageDefinition::getName, Comparator.nullsLast(Comparator.naturalOrder()))),
+    NAME_ASC("name", null, "LOCALNAME(package)"),
 
-    INSTALLATION_DATE_DESC("installationDate", Comparator.comparing(PackageDefinition::getLastUnpacked,
-            Comparator.nullsLast(Comparator.reverseOrder()))),
+    INSTALLATION_DATE_DESC("installationDate", PackageDefinition::getLastUnpacked, "[jcr:content/vlt:definition/lastUnpacked] DESC"),
 
-    RECENTLY_ADDED_DESC("recentlyAdded", Comparator.comparing(PackageDefinition::getLastUnwrapped,
-            Comparator.nullsLast(Comparator.reverseOrder())));
+    RECENTLY_ADDED_DESC("recentlyAdded", PackageDefinition::getLastUnwrapped, "[jcr:content/vlt:definition/lastUnwrapped] DESC");
 
     private final String paramName;
 
+    private final Function<PackageDefinition, Calendar> dateGetter;
+
     private final Comparator<PackageDefinition> comparator;
 
-    SortBy(String paramName, Comparator<PackageDefinition> comparator) {
+    private final String queryOrdering;
+
+    SortBy(String paramName, Function<PackageDefinition, Calendar> dateGetter, String queryOrdering) {
         this.paramName = paramName;
-        this.comparator = comparator;
+        this.dateGetter = dateGetter;
+        this.comparator = Comparator.comparingLong(this::getSortValue)
+                .thenComparing(this::getSortName, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(PackageDefinition::getPath);
+        this.queryOrdering = queryOrdering;
     }
 
     public Comparator<PackageDefinition> getComparator() {
         return comparator;
     }
 
+    /**
+     * Returns primary sort key, packages are ordered by ascending values. Dates are sorted descending with missing dates last,
+     * packages sorted by name have no primary key and are ordered by {@link #getSortName(PackageDefinition)}.
+     */
+    public long getSortValue(PackageDefinition definition) {
+        if (dateGetter == null) {
+            return 0L;
+        }
+        Calendar date = dateGetter.apply(definition);
+        return date != null ? -date.getTimeInMillis() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns secondary sort key, compared when primary sort keys are equal, {@code null} values are ordered last.
+     */
+    public String getSortName(PackageDefinition definition) {
+        return dateGetter == null ? definition.getName() : null;
+    }
+
+    /**
+     * JCR-SQL2 ordering of packages selected as {@code package}, {@code null} if packages have to be sorted in memory.
+     */
+    public String getQueryOrdering() {
+        return queryOrdering;
+    }
+
     @Override
     public String toString() {
         return paramName;
@@ -13,6 +13,8 @@ import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.ds.websight.packagemanager.JobProperties;
+import pl.ds.websight.packagemanager.catalog.PackageDependencyIndex;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
 import pl.ds.websight.packagemanager.rest.AbstractRestAction;
 import pl.ds.websight.packagemanager.rest.Messages;
 import pl.ds.websight.packagemanager.rest.PackagePrerequisiteValidator;
@@ -43,6 +45,12 @@ public class SchedulePackageActionsRestAction extends AbstractRestAction<Schedul
     @Reference
     private Packaging packaging;
 
+    @Reference
+    private PackageDependencyIndex dependencyIndex;
+
+    @Reference
+    private PackageJobRegistry jobRegistry;
+
     @Override
     protected RestActionResult<Void> performAction(SchedulePackageActionsRestModel model) throws RepositoryException {
         String path = model.getPath();
@@ -64,6 +72,8 @@ public class SchedulePackageActionsRestAction extends AbstractRestAction<Schedul
         } catch (OpenPackageException e) {
             LOG.warn("Could not open package: {}", path, e);
             return RestActionResult.failure(e.getSimplifiedMessage(), e.getMessage());
+        } finally {
+            jobRegistry.invalidateSchedules();
         }
         return RestActionResult.success(Messages.SCHEDULE_PACKAGE_ACTIONS_SUCCESS,
                 Messages.formatMessage(Messages.SCHEDULE_PACKAGE_ACTIONS_SUCCESS_DETAILS, path));
@@ -122,7 +132,7 @@ public class SchedulePackageActionsRestAction extends AbstractRestAction<Schedul
         for (ScheduleAction scheduleActionToAdd : actionsToAdd) {
             ScheduleActionType scheduleActionType = scheduleActionToAdd.getActionType();
             Pair<String, String> validationResult = PackagePrerequisiteValidator.getValidationResult(scheduleActionType.getValidators(),
-                    packageToAddSchedules, path);
+                    packageToAddSchedules, path, dependencyIndex);
             if (!validationResult.equals(ImmutablePair.nullPair())) {
                 return RestActionResult.failure(validationResult.getKey(), validationResult.getValue());
             }
@@ -0,0 +1,174 @@
+package pl.ds.websight.packagemanager.servlet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+import org.apache.sling.servlets.annotations.SlingServletFilter;
+import org.apache.sling.servlets.annotations.SlingServletFilterScope;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import static javax.servlet.http.HttpServletResponse.SC_MULTIPLE_CHOICES;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+
+/**
+ * Adds ETag based on {@link PackageCatalog#getRevisionTag()} to responses of listing packages, groups and package logs. Requests
+ * with matching 'If-None-Match' header are answered with 304 status before the request is processed.
+ */
+@Component(service = Filter.class)
+@SlingServletFilter(
+        scope = SlingServletFilterScope.REQUEST,
+        pattern = "/apps/websight-package-manager-service/bin/(find-packages\\.action|get-groups\\.action|package\\.log)",
+        methods = { HttpConstants.METHOD_GET, HttpConstants.METHOD_HEAD })
+public class CatalogRevisionFilter implements Filter {
+
+    private static final String ETAG_HEADER = "ETag";
+    private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String VARY_HEADER = "Vary";
+    private static final String PACKAGE_LOG_EXTENSION = "log";
+    private static final String ETAG_DIGEST_ALGORITHM = "SHA-256";
+
+    @Reference
+    private PackageCatalog packageCatalog;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        // nothing to initialize
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof SlingHttpServletRequest) || !(response instanceof SlingHttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        SlingHttpServletResponse slingResponse = (SlingHttpServletResponse) response;
+        // Revision is read before processing, so changes made in the meantime are reported with next revision
+        String eTag = getETag(slingRequest);
+        if (PACKAGE_LOG_EXTENSION.equals(slingRequest.getRequestPathInfo().getExtension())) {
+            // Package logs may be sent gzip encoded, so also 304 responses tell caches that they depend on accepted encoding
+            slingResponse.setHeader(VARY_HEADER, "Accept-Encoding");
+        }
+        if (matches(slingRequest.getHeader(IF_NONE_MATCH_HEADER), eTag)) {
+            slingResponse.setHeader(ETAG_HEADER, eTag);
+            slingResponse.setStatus(SC_NOT_MODIFIED);
+            return;
+        }
+        chain.doFilter(request, new ETagResponse(slingResponse, eTag));
+    }
+
+    // Packages visible in responses depend on user's permissions, so full user ID is hashed together with revision
+    private String getETag(SlingHttpServletRequest request) {
+        String userId = StringUtils.defaultString(request.getRemoteUser());
+        MessageDigest digest = getDigest();
+        digest.update(packageCatalog.getRevisionTag().getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(userId.getBytes(StandardCharsets.UTF_8));
+        return WEAK_ETAG_PREFIX + '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + '"';
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance(ETAG_DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform supports " + ETAG_DIGEST_ALGORITHM, e);
+        }
+    }
+
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (StringUtils.isBlank(ifNoneMatch)) {
+            return false;
+        }
+        String opaqueTag = StringUtils.removeStart(eTag, WEAK_ETAG_PREFIX);
+        for (String requestedTag : StringUtils.split(ifNoneMatch, ',')) {
+            String trimmedTag = requestedTag.trim();
+            if ("*".equals(trimmedTag) || opaqueTag.equals(StringUtils.removeStart(trimmedTag, WEAK_ETAG_PREFIX))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void destroy() {
+        // nothing to destroy
+    }
+
+    /**
+     * Sets ETag just before response body is written, unless request failed.
+     */
+    private static class ETagResponse extends SlingHttpServletResponseWrapper {
+
+        private final String eTag;
+        private boolean failed;
+        private boolean eTagSet;
+
+        private ETagResponse(SlingHttpServletResponse response, String eTag) {
+            super(response);
+            this.eTag = eTag;
+        }
+
+        @Override
+        public void setStatus(int status) {
+            failed = status >= SC_MULTIPLE_CHOICES;
+            super.setStatus(status);
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            failed = true;
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            failed = true;
+            super.sendError(status, message);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            setETag();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            setETag();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            setETag();
+            super.flushBuffer();
+        }
+
+        private void setETag() {
+            if (!eTagSet && !failed && !isCommitted()) {
+                setHeader(ETAG_HEADER, eTag);
+                eTagSet = true;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,180 @@
+package pl.ds.websight.packagemanager.servlet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.jackrabbit.vault.packaging.PackageId;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.event.jobs.ScheduledJobInfo;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageCatalog;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
+import pl.ds.websight.packagemanager.dto.PackageActionDto;
+import pl.ds.websight.packagemanager.rest.Messages;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
+import pl.ds.websight.packagemanager.util.DateUtil;
+import pl.ds.websight.packagemanager.util.JcrPackageStatusUtil;
+import pl.ds.websight.packagemanager.util.JcrPackageUtil;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.Servlet;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_EXTENSIONS;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_METHODS;
+
+/**
+ * Streams all packages readable by requesting user as newline delimited JSON, one package per line. Packages are written and
+ * flushed in batches while they are found, so memory used by export doesn't depend on number of packages.
+ */
+@Component(
+        service = Servlet.class,
+        property = {
+                SLING_SERVLET_METHODS + '=' + HttpConstants.METHOD_GET,
+                SLING_SERVLET_EXTENSIONS + '=' + ExportPackagesServlet.EXPORT_EXTENSION
+        })
+@SlingServletPaths(value = "/apps/websight-package-manager-service/bin/packages")
+public class ExportPackagesServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 3902853175263428470L;
+    private static final Logger LOG = LoggerFactory.getLogger(ExportPackagesServlet.class);
+
+    static final String EXPORT_EXTENSION = "ndjson";
+
+    private static final int BATCH_SIZE = 100;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Reference
+    private transient PackageJobRegistry jobRegistry;
+
+    @Reference
+    private transient PackageCatalog packageCatalog;
+
+    @Override
+    protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
+        Session session = request.getResourceResolver().adaptTo(Session.class);
+        if (session == null) {
+            response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.EXPORT_PACKAGES_ERROR_NO_USER_SESSION);
+            return;
+        }
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+        response.setHeader("Cache-Control", "no-cache, no-store, must-revalidate");
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(response.getWriter())) {
+            generator.setRootValueSeparator(null);
+            if (session.nodeExists(JcrPackageUtil.PACKAGES_ROOT_PATH)) {
+                PackageBatch batch = new PackageBatch(generator, response, session);
+                if (packageCatalog.isAvailable()) {
+                    Iterator<PackageDefinition> definitions =
+                            packageCatalog.streamPackages(session, JcrPackageUtil.PACKAGES_ROOT_PATH, true).iterator();
+                    while (definitions.hasNext()) {
+                        batch.add(definitions.next());
+                    }
+                } else {
+                    exportPackages(session.getNode(JcrPackageUtil.PACKAGES_ROOT_PATH), batch);
+                }
+                batch.write();
+            }
+        } catch (RepositoryException e) {
+            LOG.warn("Could not export packages", e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.EXPORT_PACKAGES_ERROR);
+            }
+        }
+    }
+
+    private static void exportPackages(Node root, PackageBatch batch) throws RepositoryException, IOException {
+        NodeIterator nodeIterator = root.getNodes();
+        while (nodeIterator.hasNext()) {
+            Node child = nodeIterator.nextNode();
+            if (".snapshot".equals(child.getName())) {
+                continue;
+            }
+            if (JcrPackageUtil.isValidPackageNode(child)) {
+                batch.add(new PackageDefinition(child));
+            } else if (child.hasNodes()) {
+                exportPackages(child, batch);
+            }
+        }
+    }
+
+    private class PackageBatch {
+
+        private final JsonGenerator generator;
+        private final SlingHttpServletResponse response;
+        private final Session session;
+        private final List<PackageDefinition> packages = new ArrayList<>(BATCH_SIZE);
+
+        private PackageBatch(JsonGenerator generator, SlingHttpServletResponse response, Session session) {
+            this.generator = generator;
+            this.response = response;
+            this.session = session;
+        }
+
+        private void add(PackageDefinition definition) throws IOException {
+            packages.add(definition);
+            if (packages.size() == BATCH_SIZE) {
+                write();
+            }
+        }
+
+        // Last actions and schedules are fetched once per batch, packages in batch were already found readable
+        private void write() throws IOException {
+            if (packages.isEmpty()) {
+                return;
+            }
+            String[] packagesPaths = packages.stream().map(PackageDefinition::getPath).toArray(String[]::new);
+            Map<String, PackageActionDto> actionsByPath = PackageActionDto.forReadablePackagePaths(jobRegistry, session,
+                    packagesPaths);
+            Map<String, ScheduledJobInfo> schedulesByPath = jobRegistry.getNearestScheduledJobs(packagesPaths);
+            for (PackageDefinition definition : packages) {
+                writePackage(definition, actionsByPath.getOrDefault(definition.getPath(), PackageActionDto.UNKNOWN),
+                        schedulesByPath.get(definition.getPath()));
+            }
+            packages.clear();
+            generator.flush();
+            response.flushBuffer();
+        }
+
+        private void writePackage(PackageDefinition definition, PackageActionDto lastAction, ScheduledJobInfo nextSchedule)
+                throws IOException {
+            PackageId packageId = definition.getPackageId();
+            generator.writeStartObject();
+            generator.writeStringField("path", definition.getPath());
+            generator.writeStringField("id", packageId != null ? packageId.toString() : null);
+            generator.writeNumberField("size", definition.getSize());
+            generator.writeObjectFieldStart("status");
+            generator.writeBooleanField("built", JcrPackageStatusUtil.isBuilt(definition));
+            generator.writeBooleanField("installed", JcrPackageStatusUtil.isInstalled(definition, session));
+            generator.writeBooleanField("modified", JcrPackageStatusUtil.isModified(definition));
+            generator.writeEndObject();
+            generator.writeObjectFieldStart("lastAction");
+            generator.writeStringField("state", lastAction.getState().name());
+            generator.writeStringField("type", lastAction.getType() != null ? lastAction.getType().name() : null);
+            generator.writeStringField("applicantId", lastAction.getApplicantId());
+            generator.writeEndObject();
+            generator.writeStringField("nextScheduledExecution",
+                    nextSchedule != null ? DateUtil.format(nextSchedule.getNextScheduledExecution()) : null);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+    }
+
+}
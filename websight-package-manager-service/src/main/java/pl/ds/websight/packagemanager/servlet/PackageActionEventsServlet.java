@@ -0,0 +1,204 @@
+package pl.ds.websight.packagemanager.servlet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageJobRegistry;
+import pl.ds.websight.packagemanager.dto.PackageActionDto;
+import pl.ds.websight.packagemanager.rest.Messages;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.Servlet;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_EXTENSIONS;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_METHODS;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.PACKAGE_PATH_PARAM_NAME;
+
+/**
+ * Streams action states of requested packages as server-sent events. Current states are sent when stream is opened, then
+ * states of packages are sent whenever their actions are queued, started or finished, including actions of other cluster
+ * instances confirmed periodically by {@link PackageJobRegistry}. Stream is closed after configured time, clients reconnect and
+ * receive current states again. Streams hold request threads, so when their number exceeds configured maximum, current states
+ * are sent and stream is closed right away, making clients reconnect after heartbeat interval.
+ */
+@Component(
+        service = Servlet.class,
+        property = {
+                SLING_SERVLET_METHODS + '=' + HttpConstants.METHOD_GET,
+                SLING_SERVLET_EXTENSIONS + '=' + PackageActionEventsServlet.EVENTS_EXTENSION
+        })
+@SlingServletPaths(value = "/apps/websight-package-manager-service/bin/package-actions")
+@Designate(ocd = PackageActionEventsServlet.Config.class)
+public class PackageActionEventsServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = 5214893307265402157L;
+    private static final Logger LOG = LoggerFactory.getLogger(PackageActionEventsServlet.class);
+
+    static final String EVENTS_EXTENSION = "events";
+
+    private static final String STATES_EVENT_NAME = "states";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Reference
+    private transient PackageJobRegistry jobRegistry;
+
+    private long streamDuration;
+    private long heartbeatInterval;
+    private transient Semaphore openStreams;
+
+    @Override
+    protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
+        String[] packagesPaths = request.getParameterValues(PACKAGE_PATH_PARAM_NAME);
+        if (packagesPaths == null || packagesPaths.length == 0) {
+            response.sendError(SC_BAD_REQUEST, Messages.GET_PACKAGE_ACTION_EVENTS_ERROR_NO_PATHS);
+            return;
+        }
+        Session session = request.getResourceResolver().adaptTo(Session.class);
+        if (session == null) {
+            response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.GET_PACKAGE_ACTION_EVENTS_ERROR_NO_USER_SESSION);
+            return;
+        }
+        Set<String> subscribedPaths = new HashSet<>(Arrays.asList(packagesPaths));
+        BlockingQueue<String> changedPaths = new LinkedBlockingQueue<>();
+        Consumer<String> listener = packagePath -> {
+            if (subscribedPaths.contains(packagePath)) {
+                changedPaths.offer(packagePath);
+            }
+        };
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+        PrintWriter writer = response.getWriter();
+        if (!openStreams.tryAcquire()) {
+            sendStatesOnly(writer, session, subscribedPaths);
+            return;
+        }
+        jobRegistry.addListener(listener);
+        try {
+            sendStates(writer, session, subscribedPaths, false);
+            long streamEnd = System.currentTimeMillis() + streamDuration;
+            while (System.currentTimeMillis() < streamEnd && !writer.checkError()) {
+                String changedPath = changedPaths.poll(heartbeatInterval, TimeUnit.MILLISECONDS);
+                if (changedPath == null) {
+                    writer.write(": heartbeat\n\n");
+                    writer.flush();
+                    continue;
+                }
+                Set<String> statesToSend = new HashSet<>();
+                statesToSend.add(changedPath);
+                changedPaths.drainTo(statesToSend);
+                sendStates(writer, session, statesToSend, true);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RepositoryException e) {
+            LOG.warn("Could not send package action states", e);
+        } finally {
+            jobRegistry.removeListener(listener);
+            openStreams.release();
+        }
+    }
+
+    private void sendStatesOnly(PrintWriter writer, Session session, Set<String> packagesPaths) throws IOException {
+        writer.write("retry: " + heartbeatInterval + "\n\n");
+        try {
+            sendStates(writer, session, packagesPaths, false);
+        } catch (RepositoryException e) {
+            LOG.warn("Could not send package action states", e);
+        }
+    }
+
+    private void sendStates(PrintWriter writer, Session session, Set<String> packagesPaths, boolean changed)
+            throws RepositoryException, IOException {
+        // Request session is kept open for the whole stream, so it has to see summaries of actions finished meanwhile. States of
+        // running actions are tracked by job registry, so session is not refreshed when all changed packages have running jobs.
+        if (changed && !jobRegistry.getJobs(packagesPaths.toArray(new String[0])).keySet().containsAll(packagesPaths)) {
+            session.refresh(true);
+        }
+        Map<String, PackageActionDto> states = PackageActionDto.forPackagePaths(jobRegistry, session, packagesPaths.toArray(new String[0]));
+        if (states.isEmpty()) {
+            return;
+        }
+        StringWriter data = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(data)) {
+            generator.writeStartObject();
+            for (Map.Entry<String, PackageActionDto> state : states.entrySet()) {
+                PackageActionDto action = state.getValue();
+                generator.writeObjectFieldStart(state.getKey());
+                generator.writeStringField("state", action.getState().name());
+                generator.writeStringField("type", action.getType() != null ? action.getType().name() : null);
+                generator.writeStringField("applicantId", action.getApplicantId());
+                generator.writeEndObject();
+            }
+            generator.writeEndObject();
+        }
+        writer.write("event: " + STATES_EVENT_NAME + "\ndata: " + data + "\n\n");
+        writer.flush();
+    }
+
+    @Activate
+    private void activate(Config config) {
+        streamDuration = TimeUnit.SECONDS.toMillis(Math.max(1L, config.stream_duration()));
+        heartbeatInterval = TimeUnit.SECONDS.toMillis(Math.max(1L, config.heartbeat_interval()));
+        openStreams = new Semaphore(Math.max(0, config.max_streams()));
+    }
+
+    @ObjectClassDefinition(name = "WebSight Package Manager: Package Action Events Servlet Configuration")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Stream duration",
+                description = "Time in seconds after which stream of package action states is closed and reopened by clients.",
+                type = AttributeType.LONG
+        )
+        long stream_duration() default 60; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Heartbeat interval",
+                description = "Time in seconds without state changes after which comment is sent to keep stream open.",
+                type = AttributeType.LONG
+        )
+        long heartbeat_interval() default 15; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Maximum streams",
+                description = "Maximum number of streams kept open at the same time. Clients exceeding it receive current states " +
+                        "and reconnect after heartbeat interval.",
+                type = AttributeType.INTEGER
+        )
+        int max_streams() default 20; // NOSONAR
+
+    }
+
+}
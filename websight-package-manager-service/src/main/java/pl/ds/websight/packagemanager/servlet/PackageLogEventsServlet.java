@@ -0,0 +1,226 @@
+package pl.ds.websight.packagemanager.servlet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.packageaction.PackageActionLogFeed;
+import pl.ds.websight.packagemanager.rest.Messages;
+import pl.ds.websight.packagemanager.util.JcrPackageUtil;
+import pl.ds.websight.packagemanager.util.PackageLogUtil;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.Servlet;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_EXTENSIONS;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_METHODS;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.LOG_ID_PARAM_NAME;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.PACKAGE_PATH_PARAM_NAME;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.SINCE_PARAM_NAME;
+
+/**
+ * Streams log of package action as server-sent events. Log tail, or lines following line number already received by client,
+ * is sent when stream is opened, then lines are sent as they are produced by action running on this instance. Lines carry
+ * identity of log, clients following log of other action receive log tail again. Stream ends when action is finished, when it
+ * is not running on this instance or after configured time, so clients check action state and subscribe again if needed.
+ * Streams hold request threads, so when their number exceeds configured maximum, stream ends right after lines available
+ * already are sent.
+ */
+@Component(
+        service = Servlet.class,
+        property = {
+                SLING_SERVLET_METHODS + '=' + HttpConstants.METHOD_GET,
+                SLING_SERVLET_EXTENSIONS + '=' + PackageLogEventsServlet.EVENTS_EXTENSION
+        })
+@SlingServletPaths(value = "/apps/websight-package-manager-service/bin/package-log")
+@Designate(ocd = PackageLogEventsServlet.Config.class)
+public class PackageLogEventsServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = -6024387716356311905L;
+    private static final Logger LOG = LoggerFactory.getLogger(PackageLogEventsServlet.class);
+
+    static final String EVENTS_EXTENSION = "events";
+
+    private static final String LINES_EVENT_NAME = "lines";
+    private static final String END_EVENT_NAME = "end";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Reference
+    private transient PackageActionLogFeed logFeed;
+
+    private long streamDuration;
+    private long heartbeatInterval;
+    private transient Semaphore openStreams;
+
+    @Override
+    protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
+        String packagePath = request.getParameter(PACKAGE_PATH_PARAM_NAME);
+        if (packagePath == null || !packagePath.startsWith(JcrPackageUtil.PACKAGES_ROOT_PATH)) {
+            response.sendError(SC_BAD_REQUEST, Messages.PACKAGE_PATH_VALIDATION_ERROR_INVALID_PATH);
+            return;
+        }
+        Session session = request.getResourceResolver().adaptTo(Session.class);
+        if (session == null) {
+            response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.GET_PACKAGE_LOG_EVENTS_ERROR_NO_USER_SESSION);
+            return;
+        }
+        try {
+            // Live logs are shared by users, access to package is checked by reading its node with user's session
+            if (!session.nodeExists(packagePath)) {
+                response.sendError(SC_NOT_FOUND, Messages.formatMessage(Messages.GET_PACKAGE_LOG_EVENTS_ERROR_NO_PACKAGE_DETAILS,
+                        packagePath));
+                return;
+            }
+            response.setContentType("text/event-stream");
+            response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+            response.setHeader("Cache-Control", "no-cache");
+            response.setHeader("X-Accel-Buffering", "no");
+            PrintWriter writer = response.getWriter();
+            long since = Math.max(0L, NumberUtils.toLong(request.getParameter(SINCE_PARAM_NAME)));
+            String followedLogId = request.getParameter(LOG_ID_PARAM_NAME);
+            PackageActionLogFeed.LiveLog liveLog = logFeed.get(packagePath);
+            if (liveLog != null) {
+                streamLiveLog(writer, liveLog, PackageLogUtil.isFollowedLog(followedLogId, liveLog.getLogId()) ? since : 0L);
+            } else {
+                sendStoredLog(writer, session, packagePath, since, followedLogId);
+            }
+            writer.write("event: " + END_EVENT_NAME + "\ndata: {}\n\n");
+            writer.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RepositoryException e) {
+            LOG.warn("Could not send log of package {}", packagePath, e);
+            if (!response.isCommitted()) {
+                response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.formatMessage(Messages.GET_PACKAGE_LOG_ERROR_NO_LOGS_DETAILS,
+                        packagePath));
+            }
+        }
+    }
+
+    private void streamLiveLog(PrintWriter writer, PackageActionLogFeed.LiveLog liveLog, long since)
+            throws IOException, InterruptedException {
+        PackageActionLogFeed.Lines lines = liveLog.read(since, 0L);
+        boolean reset = since == 0L || lines.isSkipped();
+        if (lines.getNext() < since) {
+            // Client followed log of previous action and did not send its identity
+            lines = liveLog.read(0L, 0L);
+            reset = true;
+        }
+        sendLines(writer, lines.getEntries(), reset, lines.getNext(), liveLog.getLogId());
+        if (!openStreams.tryAcquire()) {
+            return;
+        }
+        try {
+            long streamEnd = System.currentTimeMillis() + streamDuration;
+            while (!lines.isClosed() && System.currentTimeMillis() < streamEnd && !writer.checkError()) {
+                lines = liveLog.read(lines.getNext(), heartbeatInterval);
+                if (!lines.getEntries().isEmpty()) {
+                    sendLines(writer, lines.getEntries(), lines.isSkipped(), lines.getNext(), liveLog.getLogId());
+                } else if (!lines.isClosed()) {
+                    writer.write(": heartbeat\n\n");
+                    writer.flush();
+                }
+            }
+        } finally {
+            openStreams.release();
+        }
+    }
+
+    private static void sendStoredLog(PrintWriter writer, Session session, String packagePath, long since, String followedLogId)
+            throws RepositoryException, IOException {
+        String logPath = PackageLogUtil.getLogPath(packagePath);
+        if (!session.nodeExists(logPath)) {
+            sendLines(writer, Collections.emptyList(), true, 0L, null);
+            return;
+        }
+        Node logNode = session.getNode(logPath);
+        String logId = PackageLogUtil.getLogId(logNode);
+        boolean followedLog = PackageLogUtil.isFollowedLog(followedLogId, logId);
+        PackageLogUtil.LogLines logLines = followedLog && since > 0L ? PackageLogUtil.getLogSince(logNode, since) : null;
+        if (logLines == null) {
+            logLines = PackageLogUtil.getLogTail(logNode);
+        }
+        List<String> lines = logLines.getLines();
+        sendLines(writer, lines, !followedLog || logLines.getStart() != since, logLines.getStart() + lines.size(), logId);
+    }
+
+    private static void sendLines(PrintWriter writer, List<String> lines, boolean reset, long next, String logId) throws IOException {
+        StringWriter data = new StringWriter();
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(data)) {
+            generator.writeStartObject();
+            generator.writeBooleanField("reset", reset);
+            generator.writeArrayFieldStart("lines");
+            for (String line : lines) {
+                generator.writeString(line);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("next", next);
+            generator.writeStringField("logId", logId);
+            generator.writeEndObject();
+        }
+        writer.write("event: " + LINES_EVENT_NAME + "\ndata: " + data + "\n\n");
+        writer.flush();
+    }
+
+    @Activate
+    private void activate(Config config) {
+        streamDuration = TimeUnit.SECONDS.toMillis(Math.max(1L, config.stream_duration()));
+        heartbeatInterval = TimeUnit.SECONDS.toMillis(Math.max(1L, config.heartbeat_interval()));
+        openStreams = new Semaphore(Math.max(0, config.max_streams()));
+    }
+
+    @ObjectClassDefinition(name = "WebSight Package Manager: Package Log Events Servlet Configuration")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Stream duration",
+                description = "Time in seconds after which stream of package action log is closed and reopened by clients.",
+                type = AttributeType.LONG
+        )
+        long stream_duration() default 60; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Heartbeat interval",
+                description = "Time in seconds without new log lines after which comment is sent to keep stream open.",
+                type = AttributeType.LONG
+        )
+        long heartbeat_interval() default 15; // NOSONAR
+
+        @AttributeDefinition(
+                name = "Maximum streams",
+                description = "Maximum number of streams following live logs at the same time. Clients exceeding it receive lines " +
+                        "available already and subscribe again, as when stream is closed after its duration.",
+                type = AttributeType.INTEGER
+        )
+        int max_streams() default 20; // NOSONAR
+
+    }
+
+}
@@ -0,0 +1,233 @@
+package pl.ds.websight.packagemanager.servlet;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.jackrabbit.vault.util.JcrConstants;
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.jetbrains.annotations.NotNull;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.AttributeType;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.Messages;
+import pl.ds.websight.packagemanager.util.JcrPackageUtil;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.servlet.Servlet;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_EXTENSIONS;
+import static org.apache.sling.api.servlets.ServletResolverConstants.SLING_SERVLET_METHODS;
+import static pl.ds.websight.packagemanager.rest.requestparameters.CommonParameterConstants.PACKAGE_PATH_PARAM_NAME;
+
+/**
+ * Serves package thumbnails scaled down to one of predefined sizes. Scaled thumbnails are cached in memory by thumbnail
+ * modification timestamp, responses requested with current timestamp are cached by browsers as immutable.
+ */
+@Component(
+        service = Servlet.class,
+        property = {
+                SLING_SERVLET_METHODS + '=' + HttpConstants.METHOD_GET,
+                SLING_SERVLET_EXTENSIONS + '=' + PackageThumbnailServlet.THUMBNAIL_EXTENSION
+        })
+@SlingServletPaths(value = "/apps/websight-package-manager-service/bin/thumbnail")
+@Designate(ocd = PackageThumbnailServlet.Config.class)
+public class PackageThumbnailServlet extends SlingSafeMethodsServlet {
+
+    private static final long serialVersionUID = -1807430425941851703L;
+    private static final Logger LOG = LoggerFactory.getLogger(PackageThumbnailServlet.class);
+
+    static final String THUMBNAIL_EXTENSION = "png";
+
+    private static final String SIZE_PARAM_NAME = "size";
+    private static final String TIMESTAMP_PARAM_NAME = "timestamp";
+    private static final int[] VARIANT_SIZES = { 32, 64, 128, 256 };
+    private static final long MAX_DECODED_PIXELS = 4096L * 4096L;
+    private static final String IMMUTABLE_CACHE_CONTROL = "private, max-age=31536000, immutable";
+
+    private transient ThumbnailVariantCache variantCache;
+
+    @Override
+    protected void doGet(@NotNull SlingHttpServletRequest request, @NotNull SlingHttpServletResponse response) throws IOException {
+        String thumbnailPath = getThumbnailPath(request);
+        if (thumbnailPath == null) {
+            response.sendError(SC_BAD_REQUEST, Messages.GET_PACKAGE_THUMBNAIL_ERROR_INVALID_PATH);
+            return;
+        }
+        Session session = request.getResourceResolver().adaptTo(Session.class);
+        if (session == null) {
+            response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.GET_PACKAGE_THUMBNAIL_ERROR_NO_USER_SESSION);
+            return;
+        }
+        String contentPath = thumbnailPath + '/' + JcrConstants.JCR_CONTENT;
+        try {
+            if (!session.nodeExists(contentPath) || !session.getNode(contentPath).hasProperty(JcrConstants.JCR_DATA)) {
+                response.sendError(SC_NOT_FOUND, Messages.formatMessage(Messages.GET_PACKAGE_THUMBNAIL_ERROR_NO_THUMBNAIL_DETAILS,
+                        thumbnailPath));
+                return;
+            }
+            Node contentNode = session.getNode(contentPath);
+            long timestamp = contentNode.hasProperty(JcrConstants.JCR_LASTMODIFIED) ?
+                    contentNode.getProperty(JcrConstants.JCR_LASTMODIFIED).getDate().getTimeInMillis() :
+                    0L;
+            int size = getVariantSize(request.getParameter(SIZE_PARAM_NAME));
+            // Variants are shared by users, access to thumbnail is checked by reading its node with user's session
+            String variantKey = thumbnailPath + '@' + timestamp + '@' + size;
+            byte[] variant = variantCache.get(variantKey);
+            if (variant == null) {
+                variant = scale(contentNode, size);
+                if (variant == null) {
+                    LOG.debug("Could not read thumbnail image {} or it is too large, sending original image", thumbnailPath);
+                    sendOriginal(response, contentNode);
+                    return;
+                }
+                variantCache.put(variantKey, variant);
+            }
+            boolean currentTimestamp = String.valueOf(timestamp).equals(request.getParameter(TIMESTAMP_PARAM_NAME));
+            response.setHeader("Cache-Control", currentTimestamp ? IMMUTABLE_CACHE_CONTROL : "no-cache");
+            response.setContentType("image/png");
+            response.setContentLength(variant.length);
+            response.getOutputStream().write(variant);
+        } catch (RepositoryException e) {
+            LOG.warn("Could not get thumbnail {}", thumbnailPath, e);
+            if (!response.isCommitted()) {
+                response.sendError(SC_INTERNAL_SERVER_ERROR, Messages.GET_PACKAGE_THUMBNAIL_ERROR);
+            }
+        }
+    }
+
+    private static String getThumbnailPath(SlingHttpServletRequest request) {
+        String path = request.getParameter(PACKAGE_PATH_PARAM_NAME);
+        if (path != null && path.startsWith(JcrPackageUtil.PACKAGES_ROOT_PATH) && path.endsWith(JcrPackageUtil.THUMBNAIL_REL_PATH)) {
+            return path;
+        }
+        return null;
+    }
+
+    // Requested size is rounded up to the nearest variant, so number of cached variants is limited
+    private static int getVariantSize(String requestedSize) {
+        int size = NumberUtils.toInt(requestedSize, VARIANT_SIZES[1]);
+        for (int variantSize : VARIANT_SIZES) {
+            if (size <= variantSize) {
+                return variantSize;
+            }
+        }
+        return VARIANT_SIZES[VARIANT_SIZES.length - 1];
+    }
+
+    private static byte[] scale(Node contentNode, int size) throws RepositoryException, IOException {
+        BufferedImage image;
+        Binary binary = contentNode.getProperty(JcrConstants.JCR_DATA).getBinary();
+        try (InputStream imageStream = binary.getStream(); ImageInputStream imageInput = ImageIO.createImageInputStream(imageStream)) {
+            image = imageInput != null ? read(imageInput) : null;
+        } finally {
+            binary.dispose();
+        }
+        if (image == null) {
+            return null;
+        }
+        double scale = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        // Large images are halved step by step, single bilinear step loses too much detail
+        BufferedImage scaled = image;
+        do {
+            int stepWidth = Math.max(width, scaled.getWidth() / 2);
+            int stepHeight = Math.max(height, scaled.getHeight() / 2);
+            scaled = resize(scaled, stepWidth, stepHeight);
+        } while (scaled.getWidth() > width || scaled.getHeight() > height);
+        ByteArrayOutputStream variant = new ByteArrayOutputStream();
+        ImageIO.write(scaled, THUMBNAIL_EXTENSION, variant);
+        return variant.toByteArray();
+    }
+
+    // Dimensions are read from image header, so images declaring too many pixels are never decoded
+    private static BufferedImage read(ImageInputStream imageInput) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInput);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(imageInput, true, true);
+            if ((long) reader.getWidth(0) * reader.getHeight(0) > MAX_DECODED_PIXELS) {
+                return null;
+            }
+            return reader.read(0);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    private static void sendOriginal(SlingHttpServletResponse response, Node contentNode) throws RepositoryException, IOException {
+        response.setHeader("Cache-Control", "no-cache");
+        if (contentNode.hasProperty(JcrConstants.JCR_MIMETYPE)) {
+            response.setContentType(contentNode.getProperty(JcrConstants.JCR_MIMETYPE).getString());
+        }
+        Binary binary = contentNode.getProperty(JcrConstants.JCR_DATA).getBinary();
+        try (InputStream imageStream = binary.getStream()) {
+            OutputStream output = response.getOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = imageStream.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    @Activate
+    private void activate(Config config) {
+        variantCache = new ThumbnailVariantCache(Math.max(0L, config.cache_size()) * 1024L);
+    }
+
+    @ObjectClassDefinition(name = "WebSight Package Manager: Package Thumbnail Servlet Configuration")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Cache size",
+                description = "Maximum size in kilobytes of scaled thumbnails kept in memory.",
+                type = AttributeType.LONG
+        )
+        long cache_size() default 4096; // NOSONAR
+
+    }
+
+}
@@ -0,0 +1,37 @@
+package pl.ds.websight.packagemanager.servlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used scaled thumbnails, bounded by total size of cached images.
+ */
+class ThumbnailVariantCache {
+
+    private final Map<String, byte[]> variants = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxSize;
+    private long size;
+
+    ThumbnailVariantCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    synchronized byte[] get(String key) {
+        return variants.get(key);
+    }
+
+    synchronized void put(String key, byte[] variant) {
+        if (variant.length > maxSize) {
+            return;
+        }
+        byte[] replaced = variants.put(key, variant);
+        size += variant.length - (replaced != null ? replaced.length : 0);
+        Iterator<byte[]> leastRecentlyUsed = variants.values().iterator();
+        while (size > maxSize && leastRecentlyUsed.hasNext()) {
+            size -= leastRecentlyUsed.next().length;
+            leastRecentlyUsed.remove();
+        }
+    }
+
+}
@@ -0,0 +1,337 @@
+package pl.ds.websight.packagemanager.util;
+
+import org.apache.sling.api.resource.ValueMap;
+
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.Property;
+import javax.jcr.RepositoryException;
+import javax.jcr.Value;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static pl.ds.websight.packagemanager.util.PackageLogUtil.MAX_ENTRY_CAPACITY;
+
+/**
+ * Log stored in chunks of {@link PackageLogUtil#MAX_ENTRY_CAPACITY} lines. Completed chunks are written once as binaries and
+ * never changed, only open chunk is rewritten when lines are appended. Index keeps number of first line and byte offset of
+ * every chunk, the last index entry belongs to open chunk. Completed chunks of logs with gzip chunk encoding are compressed, byte
+ * offsets are counted before compression.
+ */
+public final class ChunkedLogUtil {
+
+    public static final String PN_LOG_CHUNK_PREFIX = "chunk";
+    public static final String PN_OPEN_LOG_CHUNK = "openChunk";
+    public static final String PN_LOG_INDEX_FIRST_LINES = "indexFirstLines";
+    public static final String PN_LOG_INDEX_OFFSETS = "indexOffsets";
+    public static final String PN_LOG_CHUNK_ENCODING = "chunkEncoding";
+    public static final String GZIP_CHUNK_ENCODING = "gzip";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ChunkedLogUtil() {
+        // no instance
+    }
+
+    public static boolean isChunkedLog(Node logNode) throws RepositoryException {
+        return logNode.hasProperty(PN_LOG_INDEX_FIRST_LINES);
+    }
+
+    public static boolean isGzipLog(Node logNode) throws RepositoryException {
+        return logNode.hasProperty(PN_LOG_CHUNK_ENCODING) &&
+                GZIP_CHUNK_ENCODING.equals(logNode.getProperty(PN_LOG_CHUNK_ENCODING).getString());
+    }
+
+    public static boolean isChunkedLogProperty(String propName) {
+        // Prefix of chunks covers chunk encoding too
+        return propName.startsWith(PN_LOG_CHUNK_PREFIX) || PN_OPEN_LOG_CHUNK.equals(propName) ||
+                PN_LOG_INDEX_FIRST_LINES.equals(propName) || PN_LOG_INDEX_OFFSETS.equals(propName);
+    }
+
+    public static String getChunkName(int chunkIndex) {
+        return PN_LOG_CHUNK_PREFIX + chunkIndex;
+    }
+
+    public static long[] getIndex(ValueMap logValueMap, String indexName) {
+        long[] index = logValueMap.get(indexName, long[].class);
+        return index != null && index.length > 0 ? index : new long[]{ 0L };
+    }
+
+    static List<String> getFullLog(Node logNode) throws RepositoryException {
+        long[] firstLines = getIndex(logNode, PN_LOG_INDEX_FIRST_LINES);
+        List<String> lines = new ArrayList<>();
+        for (int chunkIndex = 0; chunkIndex < firstLines.length - 1; chunkIndex++) {
+            lines.addAll(getChunk(logNode, chunkIndex));
+        }
+        lines.addAll(getOpenChunk(logNode));
+        return lines;
+    }
+
+    static PackageLogUtil.LogLines getLogTail(Node logNode) throws RepositoryException {
+        long[] firstLines = getIndex(logNode, PN_LOG_INDEX_FIRST_LINES);
+        int openChunkIndex = firstLines.length - 1;
+        List<String> openChunk = getOpenChunk(logNode);
+        long linesCount = firstLines[openChunkIndex] + openChunk.size();
+        if (openChunk.size() >= MAX_ENTRY_CAPACITY || openChunkIndex == 0) {
+            return new PackageLogUtil.LogLines(linesCount - openChunk.size(), openChunk);
+        }
+        List<String> lastChunk = getChunk(logNode, openChunkIndex - 1);
+        List<String> tail = new ArrayList<>(MAX_ENTRY_CAPACITY);
+        tail.addAll(lastChunk.subList(Math.min(openChunk.size(), lastChunk.size()), lastChunk.size()));
+        tail.addAll(openChunk);
+        return new PackageLogUtil.LogLines(linesCount - tail.size(), tail);
+    }
+
+    static PackageLogUtil.LogLines getLogSince(Node logNode, long since) throws RepositoryException {
+        long[] firstLines = getIndex(logNode, PN_LOG_INDEX_FIRST_LINES);
+        int openChunkIndex = firstLines.length - 1;
+        int chunkIndex = Arrays.binarySearch(firstLines, since);
+        // Negative result is encoded insertion point, preceding chunk contains requested line
+        chunkIndex = chunkIndex >= 0 ? chunkIndex : -chunkIndex - 2;
+        List<String> lines = new ArrayList<>();
+        for (int index = chunkIndex; index < openChunkIndex; index++) {
+            List<String> chunk = getChunk(logNode, index);
+            int skippedLines = index == chunkIndex ? (int) Math.min(since - firstLines[index], chunk.size()) : 0;
+            lines.addAll(chunk.subList(skippedLines, chunk.size()));
+        }
+        List<String> openChunk = getOpenChunk(logNode);
+        if (chunkIndex == openChunkIndex) {
+            int skippedLines = (int) (since - firstLines[openChunkIndex]);
+            if (skippedLines > openChunk.size()) {
+                return null;
+            }
+            lines.addAll(openChunk.subList(skippedLines, openChunk.size()));
+        } else {
+            lines.addAll(openChunk);
+        }
+        return new PackageLogUtil.LogLines(since, lines);
+    }
+
+    private static long[] getIndex(Node logNode, String indexName) throws RepositoryException {
+        if (!logNode.hasProperty(indexName)) {
+            return new long[]{ 0L };
+        }
+        Value[] values = logNode.getProperty(indexName).getValues();
+        long[] index = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            index[i] = values[i].getLong();
+        }
+        return index.length > 0 ? index : new long[]{ 0L };
+    }
+
+    /**
+     * Writes lines of whole log, chunks are decompressed while they are written, one at a time.
+     */
+    public static void writeLog(Node logNode, Writer writer) throws RepositoryException, IOException {
+        boolean gzipLog = isGzipLog(logNode);
+        long[] firstLines = getIndex(logNode, PN_LOG_INDEX_FIRST_LINES);
+        char[] buffer = new char[BUFFER_SIZE];
+        for (int chunkIndex = 0; chunkIndex < firstLines.length - 1; chunkIndex++) {
+            String chunkName = getChunkName(chunkIndex);
+            if (logNode.hasProperty(chunkName)) {
+                Binary binary = logNode.getProperty(chunkName).getBinary();
+                try (Reader chunkReader = new InputStreamReader(openChunkStream(binary, gzipLog), StandardCharsets.UTF_8)) {
+                    int read;
+                    while ((read = chunkReader.read(buffer)) != -1) {
+                        writer.write(buffer, 0, read);
+                    }
+                } finally {
+                    binary.dispose();
+                }
+            }
+        }
+        if (logNode.hasProperty(PN_OPEN_LOG_CHUNK)) {
+            writer.write(logNode.getProperty(PN_OPEN_LOG_CHUNK).getString());
+        }
+    }
+
+    /**
+     * Writes whole log of gzip chunk encoding as gzip stream, without decompressing it. Completed chunks are copied as they are
+     * stored, followed by compressed open chunk, concatenated gzip members are decompressed as single stream.
+     */
+    public static void writeGzipLog(Node logNode, OutputStream outputStream) throws RepositoryException, IOException {
+        long[] firstLines = getIndex(logNode, PN_LOG_INDEX_FIRST_LINES);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int chunkIndex = 0; chunkIndex < firstLines.length - 1; chunkIndex++) {
+            String chunkName = getChunkName(chunkIndex);
+            if (logNode.hasProperty(chunkName)) {
+                Binary binary = logNode.getProperty(chunkName).getBinary();
+                try (InputStream chunkStream = binary.getStream()) {
+                    int read;
+                    while ((read = chunkStream.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, read);
+                    }
+                } finally {
+                    binary.dispose();
+                }
+            }
+        }
+        String openChunk = logNode.hasProperty(PN_OPEN_LOG_CHUNK) ? logNode.getProperty(PN_OPEN_LOG_CHUNK).getString() : "";
+        if (!openChunk.isEmpty()) {
+            GZIPOutputStream openChunkStream = new GZIPOutputStream(outputStream, BUFFER_SIZE);
+            openChunkStream.write(openChunk.getBytes(StandardCharsets.UTF_8));
+            // Finished instead of closed, so output stream stays open
+            openChunkStream.finish();
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Gets length of whole log in bytes, as written by {@link #writeLog(Node, Writer)}.
+     */
+    public static long getLogLength(Node logNode) throws RepositoryException {
+        long[] offsets = getIndex(logNode, PN_LOG_INDEX_OFFSETS);
+        return offsets[offsets.length - 1] + getOpenChunkBytes(logNode).length;
+    }
+
+    /**
+     * Writes bytes of log from first to last given byte, inclusive. Chunk containing first byte is located by index, preceding
+     * chunks are not read and chunks are written one at a time.
+     */
+    public static void writeLogRange(Node logNode, long first, long last, OutputStream outputStream)
+            throws RepositoryException, IOException {
+        boolean gzipLog = isGzipLog(logNode);
+        long[] offsets = getIndex(logNode, PN_LOG_INDEX_OFFSETS);
+        int openChunkIndex = offsets.length - 1;
+        int chunkIndex = Arrays.binarySearch(offsets, first);
+        // Negative result is encoded insertion point, preceding chunk contains requested byte
+        chunkIndex = chunkIndex >= 0 ? chunkIndex : -chunkIndex - 2;
+        long remaining = last - first + 1;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        for (int index = chunkIndex; index < openChunkIndex && remaining > 0; index++) {
+            String chunkName = getChunkName(index);
+            if (!logNode.hasProperty(chunkName)) {
+                continue;
+            }
+            Binary binary = logNode.getProperty(chunkName).getBinary();
+            try (InputStream chunkStream = openChunkStream(binary, gzipLog)) {
+                if (index == chunkIndex) {
+                    skipFully(chunkStream, first - offsets[index]);
+                }
+                int read;
+                while (remaining > 0 && (read = chunkStream.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                    outputStream.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            } finally {
+                binary.dispose();
+            }
+        }
+        if (remaining > 0) {
+            byte[] openChunk = getOpenChunkBytes(logNode);
+            int openChunkFirst = (int) Math.max(0L, first - offsets[openChunkIndex]);
+            int length = (int) Math.min(remaining, openChunk.length - (long) openChunkFirst);
+            if (length > 0) {
+                outputStream.write(openChunk, openChunkFirst, length);
+            }
+        }
+        outputStream.flush();
+    }
+
+    private static void skipFully(InputStream stream, long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                if (stream.read() == -1) {
+                    return;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static byte[] getOpenChunkBytes(Node logNode) throws RepositoryException {
+        return logNode.hasProperty(PN_OPEN_LOG_CHUNK) ?
+                logNode.getProperty(PN_OPEN_LOG_CHUNK).getString().getBytes(StandardCharsets.UTF_8) :
+                new byte[0];
+    }
+
+    /**
+     * Compresses chunk of log with gzip chunk encoding.
+     */
+    public static byte[] compressChunk(byte[] chunk) {
+        ByteArrayOutputStream compressedChunk = new ByteArrayOutputStream(chunk.length / 4 + 64);
+        try (GZIPOutputStream chunkStream = new GZIPOutputStream(compressedChunk, BUFFER_SIZE)) {
+            chunkStream.write(chunk);
+        } catch (IOException e) {
+            // Not thrown by in-memory stream
+            throw new UncheckedIOException(e);
+        }
+        return compressedChunk.toByteArray();
+    }
+
+    private static List<String> getChunk(Node logNode, int chunkIndex) throws RepositoryException {
+        String chunkName = getChunkName(chunkIndex);
+        if (!logNode.hasProperty(chunkName)) {
+            return Collections.emptyList();
+        }
+        Property chunk = logNode.getProperty(chunkName);
+        Binary binary = chunk.getBinary();
+        try (InputStream chunkStream = openChunkStream(binary, isGzipLog(logNode))) {
+            return splitLines(readString(chunkStream));
+        } catch (IOException e) {
+            throw new RepositoryException("Could not read log chunk " + chunk.getPath(), e);
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    private static InputStream openChunkStream(Binary binary, boolean gzipLog) throws RepositoryException, IOException {
+        InputStream chunkStream = binary.getStream();
+        try {
+            return gzipLog ? new GZIPInputStream(chunkStream, BUFFER_SIZE) : chunkStream;
+        } catch (IOException e) {
+            chunkStream.close();
+            throw e;
+        }
+    }
+
+    private static String readString(InputStream stream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static List<String> getOpenChunk(Node logNode) throws RepositoryException {
+        return logNode.hasProperty(PN_OPEN_LOG_CHUNK) ?
+                splitLines(logNode.getProperty(PN_OPEN_LOG_CHUNK).getString()) :
+                Collections.emptyList();
+    }
+
+    /**
+     * Splits text into lines ended with line feeds, which are kept like in lines of logs stored before.
+     */
+    public static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        int lineStart = 0;
+        int lineEnd;
+        while ((lineEnd = text.indexOf('\n', lineStart)) != -1) {
+            lines.add(text.substring(lineStart, lineEnd + 1));
+            lineStart = lineEnd + 1;
+        }
+        if (lineStart < text.length()) {
+            lines.add(text.substring(lineStart));
+        }
+        return lines;
+    }
+
+}
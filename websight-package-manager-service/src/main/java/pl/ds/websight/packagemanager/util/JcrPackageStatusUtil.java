@@ -4,8 +4,11 @@ import org.apache.jackrabbit.vault.packaging.JcrPackage;
 import org.apache.jackrabbit.vault.packaging.JcrPackageDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.catalog.PackageDependencyIndex;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
 
 import javax.jcr.RepositoryException;
+import javax.jcr.Session;
 import java.util.Calendar;
 
 public final class JcrPackageStatusUtil {
@@ -25,6 +28,24 @@ public final class JcrPackageStatusUtil {
                                 .orElse(false));
     }
 
+    public static boolean isInstalled(PackageDefinition definition, Session session) {
+        return isBuilt(definition) &&
+                (hasSnapshot(definition, session) || isNewer(definition.getLastUnpacked(), definition.getLastUnwrapped(), 1));
+    }
+
+    private static boolean hasSnapshot(PackageDefinition definition, Session session) {
+        String snapshotPath = definition.getSnapshotPath();
+        if (snapshotPath == null) {
+            return false;
+        }
+        try {
+            return session.nodeExists(snapshotPath + ".zip") || session.nodeExists(snapshotPath);
+        } catch (RepositoryException e) {
+            LOG.warn("Could not check whether the package has local snapshot", e);
+        }
+        return false;
+    }
+
     private static boolean hasSnapshot(JcrPackage jcrPackage) {
         try {
             return jcrPackage.getSnapshot() != null;
@@ -41,6 +62,16 @@ public final class JcrPackageStatusUtil {
                         .orElse(false);
     }
 
+    public static boolean isModified(PackageDefinition definition) {
+        return isBuilt(definition) &&
+                isNewer(definition.getLastModified(), definition.getCreated(), 1000) &&
+                !isNewer(definition.getLastUnwrapped(), definition.getLastModified(), 1);
+    }
+
+    public static boolean isBuilt(PackageDefinition definition) {
+        return definition.getSize() > 0 || definition.getBuildCount() > 0;
+    }
+
     public static boolean isBuilt(JcrPackage jcrPackage) {
         return jcrPackage.getSize() > 0 || hasBuilds(jcrPackage);
     }
@@ -64,9 +95,10 @@ public final class JcrPackageStatusUtil {
         return firstDate != null && (firstDate.getTimeInMillis() - secondDateInMillis) >= tolerance;
     }
 
-    public static boolean hasUnresolvedDependencies(JcrPackage jcrPackage) {
+    public static boolean hasUnresolvedDependencies(JcrPackage jcrPackage, PackageDependencyIndex dependencyIndex) {
         try {
-            return jcrPackage.getUnresolvedDependencies().length == 0;
+            // Index is rebuilt asynchronously, so dependencies it reports as unresolved are confirmed by package itself
+            return dependencyIndex.getUnresolvedDependencies(jcrPackage).length == 0 || jcrPackage.getUnresolvedDependencies().length == 0;
         } catch (RepositoryException e) {
             LOG.warn("Could not check unresolved dependencies", e);
             return false;
@@ -17,17 +17,13 @@ import pl.ds.websight.packagemanager.rest.schedule.Schedule;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
 
-import static java.util.Comparator.comparing;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.minBy;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 import static org.apache.sling.api.resource.ResourceResolverFactory.USER_IMPERSONATION;
 
 public final class JobUtil {
@@ -40,6 +36,18 @@ public final class JobUtil {
         // no instance
     }
 
+    /**
+     * Gets resolver of service user mapped to given subservice of this bundle, used by components maintaining data of all users.
+     */
+    public static ResourceResolver getServiceResolver(ResourceResolverFactory factory, String subServiceName) {
+        try {
+            return factory.getServiceResourceResolver(Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, subServiceName));
+        } catch (LoginException e) {
+            LOG.error("Could not get service resource resolver for subservice: {}", subServiceName, e);
+            return null;
+        }
+    }
+
     public static ResourceResolver getImpersonatedResolver(ResourceResolverFactory factory, String applicantId) {
         try {
             Map<String, Object> properties = new HashMap<>();
@@ -51,15 +59,6 @@ public final class JobUtil {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    public static Job findFirstRunningOrQueuedJob(JobManager jobManager, Map<String, Object> jobProperties) {
-        // QueryType.ALL surprisingly returns only running and queued jobs
-        return jobManager.findJobs(QueryType.ALL, null, 1, jobProperties).stream()
-                .filter(job -> isPackageManagerJob(job.getTopic()))
-                .findFirst()
-                .orElse(null);
-    }
-
     @SuppressWarnings("unchecked")
     public static List<Job> findAllQueuedJobs(JobManager jobManager, Map<String, Object> jobProperties) {
         return jobManager.findJobs(QueryType.QUEUED, null, -1, jobProperties).stream()
@@ -67,17 +66,6 @@ public final class JobUtil {
                 .collect(toList());
     }
 
-    public static List<Job> findRunningAndQueuedJobs(JobManager jobManager, String... packagesPaths) {
-        @SuppressWarnings("unchecked")
-        Map<String, Object>[] packagePathsQueryTemplates = Stream.of(packagesPaths)
-                .map(JobProperties::asQueryMap)
-                .toArray(Map[]::new);
-        // QueryType.ALL surprisingly returns only running and queued jobs
-        return jobManager.findJobs(QueryType.ALL, null, -1, packagePathsQueryTemplates).stream()
-                .filter(job -> isPackageManagerJob(job.getTopic()))
-                .collect(toList());
-    }
-
     @SuppressWarnings("unchecked")
     public static ScheduledJobInfo findScheduledJobWithSchedules(JobManager jobManager, Map<String, Object> scheduleJobProps,
             List<Schedule> schedules, String jobTopic) {
@@ -87,25 +75,6 @@ public final class JobUtil {
                 .orElse(null);
     }
 
-    public static ScheduledJobInfo getNearestScheduledJob(JobManager jobManager, String packagePath) {
-        return getNearestScheduledJobs(jobManager, packagePath).get(packagePath);
-    }
-
-    public static Map<String, ScheduledJobInfo> getNearestScheduledJobs(JobManager jobManager, String... packagesPaths) {
-        @SuppressWarnings("unchecked")
-        Map<String, Object>[] packagePathsQueryTemplates = Stream.of(packagesPaths)
-                .map(JobProperties::asQueryMap)
-                .toArray(Map[]::new);
-        return jobManager.getScheduledJobs(null, -1, packagePathsQueryTemplates).stream()
-                .filter(jobInfo -> isPackageManagerJob(jobInfo.getJobTopic()))
-                .filter(jobInfo -> !jobInfo.isSuspended() && !isScheduleObsolete(jobInfo))
-                .collect(groupingBy(
-                        JobProperties::getPackagePath,
-                        minBy(comparing(ScheduledJobInfo::getNextScheduledExecution)))).entrySet().stream()
-                .filter(entry -> entry.getValue().isPresent())
-                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().get()));
-    }
-
     private static boolean containsEqualSchedules(ScheduledJobInfo scheduledJobInfo, List<Schedule> schedules) {
         Collection<ScheduleInfo> jobInfoSchedules = scheduledJobInfo.getSchedules();
         return (jobInfoSchedules.size() >= schedules.size()) && jobInfoSchedules.stream().noneMatch(scheduleInfo ->
@@ -139,7 +108,7 @@ public final class JobUtil {
                 .collect(toList());
     }
 
-    private static boolean isPackageManagerJob(String jobTopic) {
+    public static boolean isPackageManagerJob(String jobTopic) {
         return jobTopic.startsWith(PKG_MANAGER_JOB_TOPIC_PREFIX);
     }
 
@@ -1,8 +1,6 @@
 package pl.ds.websight.packagemanager.util;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.math.NumberUtils;
-import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.apache.sling.api.resource.ModifiableValueMap;
 import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
@@ -17,18 +15,17 @@ import javax.jcr.Node;
 import javax.jcr.Property;
 import javax.jcr.PropertyIterator;
 import javax.jcr.RepositoryException;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.TreeMap;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toCollection;
-import static java.util.stream.Collectors.toList;
 import static org.apache.jackrabbit.vault.util.JcrConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.vault.util.JcrConstants.NT_UNSTRUCTURED;
 import static org.apache.sling.jcr.resource.api.JcrResourceConstants.NT_SLING_FOLDER;
@@ -51,81 +48,131 @@ public final class PackageLogUtil {
         // no instance
     }
 
-    public static String increaseRange(String range) {
-        ImmutablePair<Long, Long> rangeLimits = getRangeLimits(range);
-        long lowerLimit = rangeLimits.getLeft();
-        long upperLimit = rangeLimits.getRight();
-        lowerLimit += lowerLimit == 0 ? MAX_ENTRY_CAPACITY + 1 : MAX_ENTRY_CAPACITY;
-        upperLimit += MAX_ENTRY_CAPACITY;
-        return String.format("%d-%d", lowerLimit, upperLimit);
+    public static String removeLogEntryNamePrefix(String propertyName) {
+        return propertyName.substring(PN_LOG_ENTRY_PREFIX.length());
     }
 
-    public static ImmutablePair<Long, Long> getRangeLimits(String range) {
-        String[] limits = StringUtils.split(range, "-", 2);
-        if (limits.length != 2) {
-            return getPreIncrementedLimits();
-        }
-        try {
-            return ImmutablePair.of(NumberUtils.createLong(limits[0]), NumberUtils.createLong(limits[1]));
-        } catch (NumberFormatException e) {
-            LOG.debug("Could not get limits of log range", e);
-            return getPreIncrementedLimits();
-        }
+    public static boolean isLogsAuthorDifferent(String newAuthorJobId, ValueMap valueMap) {
+        return !newAuthorJobId.equals(valueMap.get(PN_LOG_AUTHOR_SIGN, String.class));
     }
 
-    private static ImmutablePair<Long, Long> getPreIncrementedLimits() {
-        return ImmutablePair.of(Math.negateExact(MAX_ENTRY_CAPACITY + 1L), 0L);
+    /**
+     * Gets identity of log, which is id of job which wrote it.
+     */
+    public static String getLogId(Node logNode) throws RepositoryException {
+        return logNode.hasProperty(PN_LOG_AUTHOR_SIGN) ? logNode.getProperty(PN_LOG_AUTHOR_SIGN).getString() : null;
     }
 
-    public static String removeLogEntryNamePrefix(String propertyName) {
-        return propertyName.substring(PN_LOG_ENTRY_PREFIX.length());
+    /**
+     * Checks whether log followed by client is the same log, clients which do not send log identity are trusted.
+     */
+    public static boolean isFollowedLog(String followedLogId, String logId) {
+        return followedLogId == null || followedLogId.equals(logId);
+    }
+
+    public static List<String> getLog(Node logNode, boolean fullLog) throws RepositoryException {
+        if (ChunkedLogUtil.isChunkedLog(logNode)) {
+            return fullLog ? ChunkedLogUtil.getFullLog(logNode) : ChunkedLogUtil.getLogTail(logNode).getLines();
+        }
+        if (!logNode.hasProperty(PN_FIRST_LOG_ENTRY)) {
+            return Collections.emptyList();
+        }
+        return fullLog ?
+                getFullLog(logNode) :
+                getLogTail(logNode.getProperties(), logNode.getProperty(PN_FIRST_LOG_ENTRY)).getLines();
     }
 
-    public static void putLog(ModifiableValueMap logValueMap, String range, List<String> entry) {
-        if (entry.isEmpty()) {
+    /**
+     * Writes lines of whole log, one log entry or chunk at a time, so whole log is never kept in memory.
+     */
+    public static void writeLog(Node logNode, Writer writer) throws RepositoryException, IOException {
+        if (ChunkedLogUtil.isChunkedLog(logNode)) {
+            ChunkedLogUtil.writeLog(logNode, writer);
             return;
         }
-        String mergedLogEntry = entry.stream()
-                .map(logLine -> StringUtils.appendIfMissing(logLine, "\n"))
-                .reduce("", String::concat);
-        logValueMap.put(PN_LOG_ENTRY_PREFIX + range, mergedLogEntry);
+        long entryIndex = 0;
+        String entryName = getLogEntryName(entryIndex);
+        while (logNode.hasProperty(entryName)) {
+            writer.write(logNode.getProperty(entryName).getString());
+            entryName = getLogEntryName(++entryIndex);
+        }
     }
 
-    public static boolean isLogsAuthorDifferent(String newAuthorJobId, ValueMap valueMap) {
-        return !newAuthorJobId.equals(valueMap.get(PN_LOG_AUTHOR_SIGN, String.class));
+    /**
+     * Gets last lines of log, with number of first of them.
+     */
+    public static LogLines getLogTail(Node logNode) throws RepositoryException {
+        if (ChunkedLogUtil.isChunkedLog(logNode)) {
+            return ChunkedLogUtil.getLogTail(logNode);
+        }
+        if (!logNode.hasProperty(PN_FIRST_LOG_ENTRY)) {
+            return new LogLines(0L, Collections.emptyList());
+        }
+        return getLogTail(logNode.getProperties(), logNode.getProperty(PN_FIRST_LOG_ENTRY));
     }
 
-    public static List<String> getLogEntry(ValueMap logValueMap, String logEntryName) {
-        return splitLogEntry(logValueMap.get(logEntryName, String.class));
+    /**
+     * Gets lines of log following given number of lines. Log entries containing requested lines are located by their names,
+     * without reading preceding entries. Returns {@code null} if log has less lines than given number, e.g. when it was
+     * replaced by log of another action.
+     */
+    public static LogLines getLogSince(Node logNode, long since) throws RepositoryException {
+        if (ChunkedLogUtil.isChunkedLog(logNode)) {
+            return ChunkedLogUtil.getLogSince(logNode, since);
+        }
+        long entryIndex = since / MAX_ENTRY_CAPACITY;
+        int skippedLines = (int) (since % MAX_ENTRY_CAPACITY);
+        String entryName = getLogEntryName(entryIndex);
+        if (!logNode.hasProperty(entryName)) {
+            // Next entry is created when preceding one is full
+            boolean logEnd = skippedLines == 0 && (entryIndex == 0 || logNode.hasProperty(getLogEntryName(entryIndex - 1)));
+            return logEnd ? new LogLines(since, Collections.emptyList()) : null;
+        }
+        List<String> entry = getLogEntry(logNode.getProperty(entryName));
+        if (entry == null || entry.size() < skippedLines) {
+            return null;
+        }
+        List<String> lines = new ArrayList<>(entry.subList(skippedLines, entry.size()));
+        entryName = getLogEntryName(++entryIndex);
+        while (logNode.hasProperty(entryName)) {
+            entry = getLogEntry(logNode.getProperty(entryName));
+            if (entry != null) {
+                lines.addAll(entry);
+            }
+            entryName = getLogEntryName(++entryIndex);
+        }
+        return new LogLines(since, lines);
     }
 
-    public static List<String> getLog(Node logNode, boolean fullLog) throws RepositoryException {
-        if (!logNode.hasProperty(PN_FIRST_LOG_ENTRY)) {
-            return Collections.emptyList();
+    private static String getLogEntryName(long entryIndex) {
+        if (entryIndex == 0) {
+            return PN_FIRST_LOG_ENTRY;
         }
-        PropertyIterator properties = logNode.getProperties();
-        return fullLog ?
-                getFullLog(properties) :
-                getLogTail(properties, logNode.getProperty(PN_FIRST_LOG_ENTRY));
+        return PN_LOG_ENTRY_PREFIX + (entryIndex * MAX_ENTRY_CAPACITY + 1) + '-' + (entryIndex + 1) * MAX_ENTRY_CAPACITY;
     }
 
-    private static List<String> getFullLog(PropertyIterator properties) throws RepositoryException {
-        Map<Long, List<String>> logEntriesMap = new TreeMap<>();
-        while (properties.hasNext()) {
-            Property property = properties.nextProperty();
-            if (isLogEntry(property.getName())) {
-                List<String> logEntry = getLogEntry(property);
-                if (logEntry != null) {
-                    logEntriesMap.put(getLowerLimit(property), logEntry);
-                }
+    private static long getEntryIndex(Property logProperty) throws RepositoryException {
+        long lowerLimit = getLowerLimit(logProperty);
+        // First entry holds lines from 0 to 999, following ones i.e. from 1001 to 2000 hold lines from 1000 to 1999
+        return lowerLimit == 0 ? 0 : (lowerLimit - 1) / MAX_ENTRY_CAPACITY;
+    }
+
+    // Entries are read by their names in order of lines, so they do not need to be sorted
+    private static List<String> getFullLog(Node logNode) throws RepositoryException {
+        List<String> lines = new ArrayList<>();
+        long entryIndex = 0;
+        String entryName = getLogEntryName(entryIndex);
+        while (logNode.hasProperty(entryName)) {
+            List<String> entry = getLogEntry(logNode.getProperty(entryName));
+            if (entry != null) {
+                lines.addAll(entry);
             }
+            entryName = getLogEntryName(++entryIndex);
         }
-        return logEntriesMap.values().stream()
-                .flatMap(Collection::stream)
-                .collect(toList());
+        return lines;
     }
 
-    private static List<String> getLogTail(PropertyIterator properties, Property firstLogNode) throws RepositoryException {
+    private static LogLines getLogTail(PropertyIterator properties, Property firstLogNode) throws RepositoryException {
         Property logTailPredecessor = null;
         Property logTailProp = firstLogNode;
         while (properties.hasNext()) {
@@ -135,7 +182,13 @@ public final class PackageLogUtil {
                 logTailProp = property;
             }
         }
-        return getMaxFilledLogTail(logTailPredecessor, logTailProp);
+        List<String> lastEntry = getLogEntry(logTailProp);
+        if (lastEntry == null) {
+            return new LogLines(0L, Collections.emptyList());
+        }
+        List<String> logTail = getMaxFilledLogTail(logTailPredecessor, lastEntry);
+        long linesCount = getEntryIndex(logTailProp) * MAX_ENTRY_CAPACITY + lastEntry.size();
+        return new LogLines(linesCount - logTail.size(), logTail);
     }
 
     public static boolean isLogEntry(String propName) {
@@ -159,9 +212,8 @@ public final class PackageLogUtil {
                 .orElse(0L);
     }
 
-    private static List<String> getMaxFilledLogTail(Property logTailPredecessor, Property logTailProp) throws RepositoryException {
-        List<String> logTail = getLogEntry(logTailProp);
-        if (logTailPredecessor != null && logTail != null && logTail.size() < MAX_ENTRY_CAPACITY) {
+    private static List<String> getMaxFilledLogTail(Property logTailPredecessor, List<String> logTail) throws RepositoryException {
+        if (logTailPredecessor != null && logTail.size() < MAX_ENTRY_CAPACITY) {
             return Optional.ofNullable(getLogEntry(logTailPredecessor))
                     .filter(predecessorEntry -> predecessorEntry.size() == MAX_ENTRY_CAPACITY)
                     .map(predecessorEntry -> predecessorEntry.subList(logTail.size(), MAX_ENTRY_CAPACITY))
@@ -200,4 +252,26 @@ public final class PackageLogUtil {
     public static String getLogPath(String packagePath) {
         return LOG_PATH_PREFIX + StringUtils.removeStart(packagePath, PACKAGES_ROOT_PATH);
     }
+
+    public static final class LogLines {
+
+        private final long start;
+        private final List<String> lines;
+
+        LogLines(long start, List<String> lines) {
+            this.start = start;
+            this.lines = lines;
+        }
+
+        /**
+         * Number of first line, lines are numbered from 0.
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public List<String> getLines() {
+            return lines;
+        }
+    }
 }
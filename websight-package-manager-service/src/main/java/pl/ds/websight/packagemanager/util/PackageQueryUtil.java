@@ -0,0 +1,137 @@
+package pl.ds.websight.packagemanager.util;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.jackrabbit.vault.packaging.JcrPackage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.ds.websight.packagemanager.rest.PackageDefinition;
+import pl.ds.websight.packagemanager.rest.requestparameters.SortBy;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Finds packages with JCR-SQL2 queries backed by the 'websightPackageManagerPackages' index shipped with configuration package.
+ */
+public final class PackageQueryUtil {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PackageQueryUtil.class);
+
+    private static final String PACKAGES_QUERY = "SELECT [jcr:path] FROM [nt:file] AS package WHERE %s(package, '%s') " +
+            "AND [jcr:content/jcr:mixinTypes] = '" + JcrPackage.NT_VLT_PACKAGE + "'";
+    private static final String NAME_CONDITION = " AND LOWER(LOCALNAME(package)) LIKE $name";
+    private static final String NAME_VARIABLE = "name";
+    private static final String SNAPSHOT_PATH_SEGMENT = "/.snapshot";
+
+    private PackageQueryUtil() {
+        // no instances
+    }
+
+    public static long countPackages(Session session, String rootPath, long limit, boolean deep) throws RepositoryException {
+        long packages = 0;
+        NodeIterator nodeIterator = execute(session, rootPath, deep, null, null);
+        while (nodeIterator.hasNext() && packages <= limit) {
+            if (!isSnapshot(nodeIterator.nextNode())) {
+                packages++;
+            }
+        }
+        return packages;
+    }
+
+    /**
+     * Returns all packages in order of query results, callers sorting them in memory do not pay for ordering by index.
+     */
+    public static List<PackageDefinition> findPackages(Session session, String rootPath, boolean deep, String nameFilter)
+            throws RepositoryException {
+        List<PackageDefinition> packages = new ArrayList<>();
+        iteratePackages(session, rootPath, deep, nameFilter, null).forEachRemaining(packages::add);
+        return packages;
+    }
+
+    /**
+     * Returns packages lazily, so only as many query results are read as consumed by caller. Packages are ordered by index when
+     * sort order can be expressed as query ordering.
+     */
+    public static Iterator<PackageDefinition> iteratePackages(Session session, String rootPath, boolean deep, String nameFilter,
+            SortBy sortBy) throws RepositoryException {
+        return new PackageDefinitionIterator(execute(session, rootPath, deep, nameFilter, sortBy));
+    }
+
+    private static NodeIterator execute(Session session, String rootPath, boolean deep, String nameFilter, SortBy sortBy)
+            throws RepositoryException {
+        StringBuilder statement = new StringBuilder(String.format(PACKAGES_QUERY, deep ? "ISDESCENDANTNODE" : "ISCHILDNODE",
+                escapeLiteral(StringUtils.removeEnd(rootPath, "/"))));
+        boolean filterByName = StringUtils.isNotEmpty(nameFilter);
+        if (filterByName) {
+            statement.append(NAME_CONDITION);
+        }
+        if (sortBy != null && sortBy.getQueryOrdering() != null) {
+            statement.append(" ORDER BY ").append(sortBy.getQueryOrdering());
+        }
+        QueryManager queryManager = session.getWorkspace().getQueryManager();
+        Query query = queryManager.createQuery(statement.toString(), Query.JCR_SQL2);
+        if (filterByName) {
+            String pattern = '%' + escapeLikePattern(StringUtils.lowerCase(nameFilter, JcrPackageUtil.DEFAULT_LOCALE)) + '%';
+            query.bindValue(NAME_VARIABLE, session.getValueFactory().createValue(pattern));
+        }
+        LOG.debug("Executing packages query: {}", statement);
+        return query.execute().getNodes();
+    }
+
+    private static String escapeLiteral(String value) {
+        return value.replace("'", "''");
+    }
+
+    private static String escapeLikePattern(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static boolean isSnapshot(Node node) throws RepositoryException {
+        return node.getPath().contains(SNAPSHOT_PATH_SEGMENT + '/');
+    }
+
+    private static class PackageDefinitionIterator implements Iterator<PackageDefinition> {
+
+        private final NodeIterator nodeIterator;
+
+        private PackageDefinition next;
+
+        private PackageDefinitionIterator(NodeIterator nodeIterator) {
+            this.nodeIterator = nodeIterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && nodeIterator.hasNext()) {
+                Node node = nodeIterator.nextNode();
+                try {
+                    if (!isSnapshot(node)) {
+                        next = new PackageDefinition(node);
+                    }
+                } catch (RepositoryException e) {
+                    LOG.warn("Could not read package found by query", e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public PackageDefinition next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            PackageDefinition result = next;
+            next = null;
+            return result;
+        }
+    }
+
+}
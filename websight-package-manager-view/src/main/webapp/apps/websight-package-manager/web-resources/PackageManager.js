@@ -26,9 +26,8 @@ import PackageService from './services/PackageService.js';
 import * as PackageMangerUtils from './utils/PackageManagerUtils.js';
 import { PACKAGE_MANAGER_ROOT_PATH } from './utils/PackageManagerConstants.js'
 
-const CHECK_PACKAGE_ACTION_STATE_TIMEOUT = 1000;
-const CHECK_PACKAGE_ACTION_STATE_QUICK_TIMEOUT = 10;
 const LOAD_LOGS_FOR_RUNNING_PACKAGE_TIMEOUT = 1000;
+const MAX_RUNNING_PACKAGE_LOG_LINES = 1000;
 const OPEN_CONSOLE_WHEN_PROCESSED_TIMEOUT = 300;
 
 export default class PackageManager extends React.Component {
@@ -38,6 +37,7 @@ export default class PackageManager extends React.Component {
         this.state = {
             packages: [],
             numberOfPages: 0,
+            nextCursor: null,
             isLoadingPackages: false,
             shouldReload: false,
             shouldForceReload: false,
@@ -56,7 +56,6 @@ export default class PackageManager extends React.Component {
             loadedParams: null,
             selectedPackage: '',
             triggeredPackages: {},
-            isPackageStateCheckScheduled: false,
             isLoadingLogsScheduled: false,
             extraActions: null
         }
@@ -72,7 +71,7 @@ export default class PackageManager extends React.Component {
         this.onConsoleScroll = this.onConsoleScroll.bind(this);
         this.openConsoleForNewPackage = this.openConsoleForNewPackage.bind(this);
         this.updateActionState = this.updateActionState.bind(this);
-        this.checkPackagesStates = this.checkPackagesStates.bind(this);
+        this.onPackagesStatesChange = this.onPackagesStatesChange.bind(this);
         this.loadLogsForRunningPackage = this.loadLogsForRunningPackage.bind(this);
 
         getWebFragments('websight.admin.packagemanager.extra.actions', (fragments) => this.setState({ extraActions: fragments }), errorNotification);
@@ -88,6 +87,8 @@ export default class PackageManager extends React.Component {
 
     componentWillUnmount() {
         window.removeEventListener('hashchange', this.onHashChange);
+        this.closePackagesStatesSubscription();
+        this.closeRunningPackageLogSubscription();
     }
 
     onHashChange() {
@@ -171,6 +172,10 @@ export default class PackageManager extends React.Component {
         if (!('path' in newParams)) {
             newParams.path = null;
         }
+        // cursor is kept only when the same page is reloaded
+        if (!('cursor' in newParams) && !forceReload) {
+            newParams.cursor = null;
+        }
 
         if (this.state.isLoadingPackages) {
             this.setState(prevState => ({
@@ -220,6 +225,7 @@ export default class PackageManager extends React.Component {
                         ? PackageMangerUtils.preservePackageData(data.packages, prevState.packages)
                         : data.packages,
                     numberOfPages: data.numberOfPages,
+                    nextCursor: data.nextCursor,
                     pageNumber: newPage,
                     numberOfFoundPackages: data.numberOfFoundPackages,
                     limitExceededPackages: data.limitExceeded,
@@ -265,7 +271,10 @@ export default class PackageManager extends React.Component {
     }
 
     onPageChange(event, newPage) {
-        this.findPackages({ pageNumber: newPage });
+        // next page starts after last package of loaded page, so it is not shifted by packages added or removed meanwhile
+        const loadedParams = this.state.loadedParams;
+        const isNextPage = loadedParams && newPage === loadedParams.pageNumber + 1;
+        this.findPackages({ pageNumber: newPage, cursor: isNextPage ? this.state.nextCursor : null });
     }
 
     refreshPage(callback) {
@@ -410,7 +419,7 @@ export default class PackageManager extends React.Component {
         this.updatePackageState(path, previousStatePackage => ({
             ...previousStatePackage,
             lastAction: state
-        }), () => this.schedulePackagesStatesCheck(true));
+        }), () => this.schedulePackagesStatesCheck());
         if (addToTriggered) {
             this.addToTriggered(path);
         }
@@ -423,54 +432,51 @@ export default class PackageManager extends React.Component {
         }
     }
 
-    schedulePackagesStatesCheck(quickCheck = false) {
-        if (this.state.isPackageStateCheckScheduled || this.state.isLoadingPackages) {
+    schedulePackagesStatesCheck() {
+        if (this.state.isLoadingPackages) {
             return;
         }
         const pendingPackagesPaths = PackageMangerUtils.getPendingPackagesPaths(this.state.packages);
+        this.subscribeToPackagesStates(pendingPackagesPaths);
         if (pendingPackagesPaths.length > 0) {
-            this.setState({
-                isPackageStateCheckScheduled: true
-            }, () => setTimeout(
-                this.checkPackagesStates,
-                quickCheck ? CHECK_PACKAGE_ACTION_STATE_QUICK_TIMEOUT : CHECK_PACKAGE_ACTION_STATE_TIMEOUT
-            ));
             this.scheduleLoadingLogsForRunningPackage();
         }
     }
 
-    checkPackagesStates() {
+    subscribeToPackagesStates(paths) {
+        const subscribedPaths = this.packagesStatesSubscription ? this.packagesStatesSubscription.paths : [];
+        if (paths.length === subscribedPaths.length && paths.every(path => subscribedPaths.includes(path))) {
+            return;
+        }
+        this.closePackagesStatesSubscription();
+        if (paths.length > 0) {
+            this.packagesStatesSubscription = PackageService.subscribeToPackagesActionsStates(paths, this.onPackagesStatesChange);
+        }
+    }
+
+    closePackagesStatesSubscription() {
+        if (this.packagesStatesSubscription) {
+            this.packagesStatesSubscription.close();
+            this.packagesStatesSubscription = null;
+        }
+    }
+
+    onPackagesStatesChange(states) {
         if (this.state.isLoadingPackages) {
-            this.setState({
-                isPackageStateCheckScheduled: false
-            });
+            // states could be already outdated in loaded packages, subscription is renewed after loading
+            this.closePackagesStatesSubscription();
             return;
         }
-        const pendingPackagesPaths = PackageMangerUtils.getPendingPackagesPaths(this.state.packages);
-        if (pendingPackagesPaths.length > 0) {
-            const onSuccess = ({ entity }) => {
-                this.openConsoleForProcessedPackages(pendingPackagesPaths, entity);
-                const packageThatFinished = pendingPackagesPaths.find(packagePath => {
-                    return entity[packagePath].state === 'FINISHED';
-                })
-                if (packageThatFinished) {
-                    // There is at least one package that requires update of its building status
-                    this.setState({
-                        isPackageStateCheckScheduled: false
-                    }, this.refreshPage);
-                } else {
-                    pendingPackagesPaths.forEach(packagePath => {
-                        this.updateActionState(packagePath, entity[packagePath]);
-                    });
-                    this.setState({
-                        isPackageStateCheckScheduled: false
-                    }, this.schedulePackagesStatesCheck);
-                }
-            }
-            PackageService.getPackagesActionsStates(pendingPackagesPaths, onSuccess);
+        const changedPackagesPaths = Object.keys(states);
+        this.openConsoleForProcessedPackages(changedPackagesPaths, states);
+        const packageThatFinished = changedPackagesPaths.find(packagePath => states[packagePath].state === 'FINISHED');
+        if (packageThatFinished) {
+            // There is at least one package that requires update of its building status
+            this.closePackagesStatesSubscription();
+            this.refreshPage();
         } else {
-            this.setState({
-                isPackageStateCheckScheduled: false
+            changedPackagesPaths.forEach(packagePath => {
+                this.updateActionState(packagePath, states[packagePath]);
             });
         }
     }
@@ -532,19 +538,7 @@ export default class PackageManager extends React.Component {
             return;
         }
         if (runningPackage.isConsoleExpanded) {
-            const onSuccess = ({ entity }) => {
-                const packageToUpdateLogs = this.getPackageByPath(runningPackage.path) || {};
-                if (packageToUpdateLogs.isConsoleExpanded) {
-                    this.setLogs(
-                        runningPackage.path,
-                        <PackageLogs logs={entity.logs} path={packageToUpdateLogs.path} />
-                    );
-                }
-                this.setState({
-                    isLoadingLogsScheduled: false
-                }, () => this.scheduleLoadingLogsForRunningPackage());
-            }
-            PackageService.getPackageActionReport(runningPackage.path, onSuccess);
+            this.subscribeToRunningPackageLog(runningPackage.path);
         } else {
             this.setState({
                 isLoadingLogsScheduled: false
@@ -552,6 +546,42 @@ export default class PackageManager extends React.Component {
         }
     }
 
+    subscribeToRunningPackageLog(path) {
+        this.closeRunningPackageLogSubscription();
+        if (!this.runningPackageLog || this.runningPackageLog.path !== path) {
+            this.runningPackageLog = { path: path, lines: [], next: 0, logId: null };
+        }
+        // log is followed from last received line of the same log, so streams opened again send only new lines
+        const runningPackageLog = this.runningPackageLog;
+        const onLines = (log) => {
+            runningPackageLog.lines = log.reset ?
+                log.lines :
+                runningPackageLog.lines.concat(log.lines).slice(-MAX_RUNNING_PACKAGE_LOG_LINES);
+            runningPackageLog.next = log.next;
+            runningPackageLog.logId = log.logId;
+            const packageToUpdateLogs = this.getPackageByPath(path) || {};
+            if (packageToUpdateLogs.isConsoleExpanded) {
+                this.setLogs(path, <PackageLogs logs={runningPackageLog.lines} path={path} />);
+            }
+        }
+        // stream ends when action is finished or is not running on instance serving the stream
+        const onEnd = () => {
+            this.closeRunningPackageLogSubscription();
+            this.setState({
+                isLoadingLogsScheduled: false
+            }, () => this.scheduleLoadingLogsForRunningPackage());
+        }
+        this.runningPackageLogSubscription = PackageService.subscribeToPackageLog(path, runningPackageLog.next, runningPackageLog.logId,
+            onLines, onEnd);
+    }
+
+    closeRunningPackageLogSubscription() {
+        if (this.runningPackageLogSubscription) {
+            this.runningPackageLogSubscription.close();
+            this.runningPackageLogSubscription = null;
+        }
+    }
+
     extractGroup(path) {
         let group = path.substring(0, path.lastIndexOf('/'));
         group = group.replace('/etc/packages', '');
@@ -24,23 +24,23 @@ const ThumbnailImage = (props) => {
     )
 }
 
-const getImageExtension = (path) => {
-    return path.split('.').pop();
-}
+const THUMBNAIL_ENDPOINT = '/apps/websight-package-manager-service/bin/thumbnail.png';
 
-const generateImageSuffix = (path) => {
-    const imageExtension = getImageExtension(path);
-    if (imageExtension) {
-        return `/image.${imageExtension}`;
-    }
-    return '';
+// Scaled thumbnail twice as large as displayed one, so it stays sharp on high density displays
+const generateThumbnailUrl = (thumbnailData, size) => {
+    const params = new URLSearchParams({
+        path: thumbnailData.path,
+        size: 2 * (size || 32),
+        timestamp: thumbnailData.timestamp
+    });
+    return `${THUMBNAIL_ENDPOINT}?${params.toString()}`;
 }
 
 const PackageThumbnail = (props) => {
     const { thumbnailData } = props;
     return thumbnailData
         ? <ThumbnailImage
-            src={`${thumbnailData.path}.${thumbnailData.timestamp}.res${generateImageSuffix(thumbnailData.path)}`}
+            src={generateThumbnailUrl(thumbnailData, props.size)}
             {...props}
         />
         : <ThumbnailIcon {...props} />
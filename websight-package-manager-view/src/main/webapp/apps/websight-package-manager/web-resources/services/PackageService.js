@@ -1,5 +1,8 @@
 import RestClient from 'websight-rest-atlaskit-client/RestClient';
 
+const PACKAGE_ACTIONS_EVENTS_ENDPOINT = '/apps/websight-package-manager-service/bin/package-actions.events';
+const PACKAGE_LOG_EVENTS_ENDPOINT = '/apps/websight-package-manager-service/bin/package-log.events';
+
 const packageRequestData = (packageData) => ({
     path: packageData.path,
     name: packageData.name,
@@ -73,6 +76,7 @@ class PackageService {
                     numberOfPages: data.entity.numberOfPages || 0,
                     numberOfFoundPackages: data.entity.numberOfFoundPackages || 0,
                     pageNumber: data.entity.pageNumber || 0,
+                    nextCursor: data.entity.nextCursor || null,
                     limitExceeded: data.entity.limitExceeded,
                     packagesLimit: data.entity.packagesLimit,
                     group: data.entity.group || null
@@ -227,16 +231,40 @@ class PackageService {
         });
     }
 
-    getPackagesActionsStates(paths, onSuccess, onComplete) {
-        this.client.get({
-            action: 'get-packages-actions-states',
-            parameters: { path: paths },
-            onSuccess: onSuccess,
-            onValidationFailure: onComplete,
-            onFailure: onComplete,
-            onError: onComplete,
-            onNonFrameworkError: onComplete
+    subscribeToPackagesActionsStates(paths, onStatesChange) {
+        const params = new URLSearchParams();
+        paths.forEach(path => params.append('path', path));
+        const eventSource = new EventSource(`${PACKAGE_ACTIONS_EVENTS_ENDPOINT}?${params.toString()}`);
+        eventSource.addEventListener('states', event => onStatesChange(JSON.parse(event.data)));
+        return {
+            paths: paths,
+            close: () => eventSource.close()
+        };
+    }
+
+    subscribeToPackageLog(path, since, logId, onLines, onEnd) {
+        const params = new URLSearchParams();
+        params.append('path', path);
+        params.append('since', since);
+        if (logId) {
+            params.append('logId', logId);
+        }
+        const eventSource = new EventSource(`${PACKAGE_LOG_EVENTS_ENDPOINT}?${params.toString()}`);
+        eventSource.addEventListener('lines', event => onLines(JSON.parse(event.data)));
+        eventSource.addEventListener('end', () => {
+            eventSource.close();
+            onEnd();
         });
+        eventSource.onerror = () => {
+            // stream is reconnected automatically, unless request failed
+            if (eventSource.readyState === EventSource.CLOSED) {
+                onEnd();
+            }
+        };
+        return {
+            path: path,
+            close: () => eventSource.close()
+        };
     }
 
     getPackageActionReport(path, onSuccess, onFailure) {
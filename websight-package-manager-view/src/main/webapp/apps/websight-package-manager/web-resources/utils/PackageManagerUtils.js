@@ -18,6 +18,9 @@ export const buildGetPackagesParams = (source) => {
     if (source.pageNumber) {
         params.pageNumber = source.pageNumber;
     }
+    if (source.cursor) {
+        params.cursor = source.cursor;
+    }
     if (source.group) {
         params.group = source.group;
     }
@@ -33,6 +36,7 @@ export const areGetPackagesParamsDifferent = (params1, params2) => {
         || areFilterOptionsDifferent(params1.filterOptions, params2.filterOptions)
         || (params1.sortBy !== params2.sortBy)
         || (params1.pageNumber !== params2.pageNumber)
+        || (params1.cursor !== params2.cursor)
         || (params1.group !== params2.group);
 }
 